@@ -0,0 +1,52 @@
+package net.prsv.jemtext.benchmarks;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemToken;
+
+// deterministic benchmark inputs of a given shape and size, see JemCorpusGenerator
+public final class Documents {
+
+    // the kind of line a document is mostly made of
+    public enum Shape {
+        TEXT,
+        LINKS,
+        LISTS,
+        PRE
+    }
+
+    public enum Size {
+        SMALL(1 << 10),
+        MEDIUM(64 << 10),
+        HUGE(8 << 20);
+
+        final int bytes;
+
+        Size(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private Documents() {
+    }
+
+    // the same shape and size always give the same document
+    public static String generate(Shape shape, Size size) {
+        // the default weights of the generator are a mix of everything, every shape adds a lot of its kind
+        JemCorpusGenerator generator = new JemCorpusGenerator().seed(shape.ordinal() * 31L + size.ordinal());
+        switch (shape) {
+            case TEXT:
+                generator.weight(JemToken.Type.JT_TEXT, 200).weight(JemToken.Type.JT_BLOCKQUOTE, 20);
+                break;
+            case LINKS:
+                generator.weight(JemToken.Type.JT_LINK, 200).images(0.5);
+                break;
+            case LISTS:
+                generator.weight(JemToken.Type.JT_LIST_ITEM, 200);
+                break;
+            case PRE:
+                generator.weight(JemToken.Type.JT_PRE_BEGIN, 20).weight(JemToken.Type.JT_PRE_TEXT, 200);
+                break;
+        }
+        return generator.generate(size.bytes);
+    }
+}
@@ -0,0 +1,227 @@
+package net.prsv.jemtext.benchmarks;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemGateway;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// a closed-loop load test of JemGateway on the loopback interface: a generated capsule is served by a
+// gateway in this JVM and a number of clients request random pages from it, each sending the next request
+// as soon as the previous one is answered. A share of the requests revalidates a page the client has seen
+// before (If-None-Match), which the gateway answers with a 304 without converting the page.
+// Reports requests/s and the latency percentiles of the measured period (after the warm-up)
+//
+//   java -cp benchmarks/target/benchmarks.jar net.prsv.jemtext.benchmarks.GatewayLoadTest
+//       [--clients N] [--seconds N] [--warmup N] [--files N] [--size BYTES] [--conditional RATIO]
+public class GatewayLoadTest {
+
+    private int clients = 16;
+    private int seconds = 10;
+    private int warmup = 3;
+    private int files = 256;
+    private long size = 8 * 1024;
+    private double conditional = 0.5;
+
+    public static void main(String[] args) throws Exception {
+        GatewayLoadTest test = new GatewayLoadTest();
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String option = args[i];
+            String value = args[++i];
+            switch (option) {
+                case "--clients":
+                    test.clients = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    test.seconds = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    test.warmup = Integer.parseInt(value);
+                    break;
+                case "--files":
+                    test.files = Integer.parseInt(value);
+                    break;
+                case "--size":
+                    test.size = Long.parseLong(value);
+                    break;
+                case "--conditional":
+                    test.conditional = Double.parseDouble(value);
+                    break;
+                default:
+                    usage();
+            }
+        }
+        test.run();
+    }
+
+    private static void usage() {
+        System.err.println("usage: GatewayLoadTest [--clients N] [--seconds N] [--warmup N] [--files N] [--size BYTES]"
+                + " [--conditional RATIO]");
+        System.exit(2);
+    }
+
+    private void run() throws Exception {
+        Path root = Files.createTempDirectory("jemtext-gateway");
+        try {
+            new JemCorpusGenerator().writeTree(root, files, size);
+            String[] paths;
+            try (Stream<Path> walk = Files.walk(root)) {
+                paths = walk.filter(Files::isRegularFile)
+                        .map(file -> "/" + root.relativize(file).toString().replace('\\', '/'))
+                        .sorted()
+                        .toArray(String[]::new);
+            }
+            // as JemGateway.main() does, without it every response waits for a delayed ACK
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            JemGateway gateway = new JemGateway(root).start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try {
+                String base = "http://127.0.0.1:" + gateway.port();
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                System.out.printf("%d clients, %d files of about %d bytes, %.0f%% conditional requests%n",
+                        clients, paths.length, size, conditional * 100);
+                long start = System.nanoTime();
+                long measureFrom = start + warmup * 1_000_000_000L;
+                long end = measureFrom + seconds * 1_000_000_000L;
+                Client[] running = new Client[clients];
+                for (int i = 0; i < clients; i++) {
+                    running[i] = new Client(client, base, paths, i, measureFrom, end);
+                    running[i].start();
+                }
+                for (Client c : running) {
+                    c.join();
+                }
+                report(running);
+            } finally {
+                gateway.stop(0);
+            }
+        } finally {
+            try (Stream<Path> walk = Files.walk(root)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private void report(Client[] clients) {
+        int count = 0;
+        long notModified = 0;
+        long failures = 0;
+        long bytes = 0;
+        for (Client c : clients) {
+            count += c.count;
+            notModified += c.notModified;
+            failures += c.failures;
+            bytes += c.bytes;
+        }
+        long[] latencies = new long[count];
+        int at = 0;
+        for (Client c : clients) {
+            System.arraycopy(c.latencies, 0, latencies, at, c.count);
+            at += c.count;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("requests     %d (%d not modified, %d failed)%n", count, notModified, failures);
+        System.out.printf("requests/s   %.1f%n", count / (double) seconds);
+        System.out.printf("MB/s         %.2f%n", bytes / (double) seconds / 1e6);
+        if (count > 0) {
+            for (double p : new double[]{50, 90, 99, 99.9}) {
+                System.out.printf("p%-11s %.3f ms%n", p == (int) p ? String.valueOf((int) p) : String.valueOf(p),
+                        percentile(latencies, p) / 1e6);
+            }
+            System.out.printf("max          %.3f ms%n", latencies[count - 1] / 1e6);
+        }
+    }
+
+    // nearest rank
+    private static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private final class Client extends Thread {
+        private final HttpClient client;
+        private final String base;
+        private final String[] paths;
+        private final String[] tags;
+        private final SplittableRandom random;
+        private final long measureFrom;
+        private final long end;
+        long[] latencies = new long[1024];
+        int count;
+        long notModified;
+        long failures;
+        long bytes;
+
+        Client(HttpClient client, String base, String[] paths, int index, long measureFrom, long end) {
+            super("client-" + index);
+            this.client = client;
+            this.base = base;
+            this.paths = paths;
+            this.tags = new String[paths.length];
+            this.random = new SplittableRandom(index);
+            this.measureFrom = measureFrom;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                int page = random.nextInt(paths.length);
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + paths[page]));
+                if (tags[page] != null && random.nextDouble() < conditional) {
+                    request.header("If-None-Match", tags[page]);
+                }
+                int status;
+                long length;
+                try {
+                    HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                    status = response.statusCode();
+                    length = response.body().length;
+                    List<String> tag = response.headers().allValues("ETag");
+                    if (!tag.isEmpty()) {
+                        tags[page] = tag.get(0);
+                    }
+                } catch (IOException e) {
+                    status = -1;
+                    length = 0;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = System.nanoTime();
+                if (now < measureFrom) {
+                    continue;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = done - now;
+                bytes += length;
+                if (status == 304) {
+                    notModified++;
+                } else if (status != 200) {
+                    failures++;
+                }
+            }
+        }
+    }
+}
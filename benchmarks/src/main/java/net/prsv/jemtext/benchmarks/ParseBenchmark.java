@@ -0,0 +1,46 @@
+package net.prsv.jemtext.benchmarks;
+
+import net.prsv.jemtext.JemParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param
+    public Documents.Shape shape;
+
+    @Param
+    public Documents.Size size;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        input = Documents.generate(shape, size);
+    }
+
+    @Benchmark
+    public JemParser parse() {
+        JemParser parser = new JemParser();
+        parser.parse(input);
+        return parser;
+    }
+}
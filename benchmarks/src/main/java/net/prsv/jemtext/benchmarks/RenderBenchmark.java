@@ -0,0 +1,61 @@
+package net.prsv.jemtext.benchmarks;
+
+import net.prsv.jemtext.JemParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// the other renderers, see HtmlBenchmark for html()
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param
+    public Documents.Shape shape;
+
+    @Param
+    public Documents.Size size;
+
+    private JemParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = new JemParser();
+        parser.parse(Documents.generate(shape, size));
+    }
+
+    @Benchmark
+    public String markdown() {
+        return parser.markdown(true);
+    }
+
+    @Benchmark
+    public String markdownWithoutImages() {
+        return parser.markdown(false);
+    }
+
+    @Benchmark
+    public String gemini() {
+        return parser.gemini();
+    }
+
+    @Benchmark
+    public String toc() {
+        return parser.toc();
+    }
+}
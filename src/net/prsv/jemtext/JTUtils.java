@@ -1,12 +1,13 @@
 package net.prsv.jemtext;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 public class JTUtils
 {
-    private static final HashMap<Character, String> fullChars = new HashMap<>();
-    private static final HashMap<Character, String> htmlChars = new HashMap<>();
-    private static final HashMap<Character, String> mdChars = new HashMap<>();
+    private static final EncodingTable fullChars = new EncodingTable();
+    private static final EncodingTable htmlChars = new EncodingTable();
+    private static final EncodingTable mdChars = new EncodingTable();
 
     static {
 
@@ -308,7 +309,34 @@ public class JTUtils
         return encode(source, mdChars);
     }
 
-    private static String encode(String input, HashMap<Character, String> encodingTable) {
+    // the same as above, but the escaped text goes straight into the output
+    // these return the number of characters that were escaped
+    public static int htmlEncode(CharSequence source, Appendable output) throws IOException {
+        return encode(source, 0, source.length(), htmlChars, output);
+    }
+
+    public static int fullEncode(CharSequence source, Appendable output) throws IOException {
+        return encode(source, 0, source.length(), fullChars, output);
+    }
+
+    public static int mdEncode(CharSequence source, Appendable output) throws IOException {
+        return encode(source, 0, source.length(), mdChars, output);
+    }
+
+    // escapes the characters in [start, end) of the source
+    public static int htmlEncode(CharSequence source, int start, int end, Appendable output) throws IOException {
+        return encode(source, start, end, htmlChars, output);
+    }
+
+    public static int fullEncode(CharSequence source, int start, int end, Appendable output) throws IOException {
+        return encode(source, start, end, fullChars, output);
+    }
+
+    public static int mdEncode(CharSequence source, int start, int end, Appendable output) throws IOException {
+        return encode(source, start, end, mdChars, output);
+    }
+
+    private static String encode(String input, EncodingTable encodingTable) {
         if (input == null) {
             return null;
         }
@@ -317,36 +345,69 @@ public class JTUtils
             return input;
         }
 
-        StringBuilder result = null;
-        char[] charsToEncode = input.toCharArray();
-        int lastMatch = -1;
-        int charsSinceLastMatch = 0;
+        // nothing to escape - return the input itself
+        int firstMatch = 0;
+        while (firstMatch < input.length() && encodingTable.get(input.charAt(firstMatch)) == null) {
+            firstMatch++;
+        }
+        if (firstMatch == input.length()) {
+            return input;
+        }
+
+        StringBuilder result = new StringBuilder(input.length() + 16);
+        result.append(input, 0, firstMatch);
+        try {
+            encode(input, firstMatch, input.length(), encodingTable, result);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
 
-        for (int i = 0; i < charsToEncode.length; i++) {
-            char currentChar = charsToEncode[i];
+    private static int encode(CharSequence input, int start, int end, EncodingTable encodingTable,
+                              Appendable output) throws IOException {
+        int lastMatch = start - 1;
+        int escaped = 0;
 
-            if (encodingTable.containsKey(currentChar)) {
-                if (null == result) {
-                    result = new StringBuilder(input.length());
-                }
-                charsSinceLastMatch = i - (lastMatch + 1);
-                if (charsSinceLastMatch > 0) {
-                    result.append(charsToEncode, lastMatch + 1, charsSinceLastMatch);
+        for (int i = start; i < end; i++) {
+            String replacement = encodingTable.get(input.charAt(i));
+
+            if (replacement != null) {
+                if (i > lastMatch + 1) {
+                    output.append(input, lastMatch + 1, i);
                 }
-                result.append(encodingTable.get(currentChar));
+                output.append(replacement);
                 lastMatch = i;
+                escaped++;
             }
         }
 
-        if (null == result) {
-            return input;
+        if (end > lastMatch + 1) {
+            output.append(input, lastMatch + 1, end);
         }
-        else {
-            charsSinceLastMatch = charsToEncode.length - (lastMatch + 1);
-            if (charsSinceLastMatch > 0) {
-                result.append(charsToEncode, lastMatch + 1, charsSinceLastMatch);
+        return escaped;
+    }
+
+    // maps characters to their replacements through a two-level table indexed by the high and the low
+    // byte of the character, so a lookup is two array accesses without boxing or hashing
+    // only the pages that hold a replacement are allocated: the ASCII/Latin-1 page and a handful of pages
+    // for the Latin Extended, Greek, punctuation and math entities
+    private static final class EncodingTable {
+        private final String[][] pages = new String[256][];
+
+        void put(char c, String replacement) {
+            String[] page = pages[c >>> 8];
+            if (page == null) {
+                page = new String[256];
+                pages[c >>> 8] = page;
             }
-            return result.toString();
+            page[c & 0xFF] = replacement;
+        }
+
+        String get(char c) {
+            String[] page = pages[c >>> 8];
+            return page == null ? null : page[c & 0xFF];
         }
     }
-}
\ No newline at end of file
+}
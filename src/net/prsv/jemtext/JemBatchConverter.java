@@ -0,0 +1,200 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// converts every .gmi file of a directory tree into HTML and/or Markdown in a mirrored output tree
+// the files are converted on a work-stealing pool, a failed file is reported and does not stop the run
+public class JemBatchConverter extends JemTreeConverter<JemBatchConverter> {
+
+    // converts the tree under source into the tree under target
+    // throws only if the source directory cannot be walked, failures of single files and of directories
+    // below it end up in the result
+    public Result convert(Path source, Path target) throws IOException {
+        Result result = new Result();
+        JemEvents.Batch event = new JemEvents.Batch();
+        event.begin();
+        long started = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    // a link to a file is followed, as when it is read
+                    if (file.getFileName().toString().endsWith(".gmi") && Files.isRegularFile(file)) {
+                        pool.execute(() -> convertFile(file, target.resolve(source.relativize(file)), result));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                // a file or directory below the source that cannot be read is a failure like any other,
+                // the rest of the tree is still converted
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    if (file.equals(source)) {
+                        throw e;
+                    }
+                    result.failures.add(new Failure(file, e));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    if (e != null) {
+                        if (directory.equals(source)) {
+                            throw e;
+                        }
+                        result.failures.add(new Failure(directory, e));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            result.elapsedNanos = System.nanoTime() - started;
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = source.toString();
+                event.files = result.files();
+                event.failures = result.failures.size();
+                event.bytesIn = result.bytesIn();
+                event.bytesOut = result.bytesOut();
+                event.parallelism = parallelism;
+                event.commit();
+            }
+        }
+        return result;
+    }
+
+    private void convertFile(Path file, Path target, Result result) {
+        JemEvents.BatchFile event = new JemEvents.BatchFile();
+        event.begin();
+        long bytesIn = 0;
+        long bytesOut = 0;
+        try {
+            JemDocument document = JemDocument.read(file);
+            bytesIn = Files.size(file);
+            result.bytesIn.add(bytesIn);
+            bytesOut = write(document, target);
+            result.files.increment();
+        } catch (IOException | RuntimeException e) {
+            result.failures.add(new Failure(file, e));
+            event.failed = true;
+        }
+        result.bytesOut.add(bytesOut);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.toString();
+            event.bytesIn = bytesIn;
+            event.bytesOut = bytesOut;
+            event.commit();
+        }
+    }
+
+    // statistics of a run
+    public static class Result {
+        private final LongAdder files = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+        private long elapsedNanos;
+
+        // the number of files converted successfully
+        public long files() {
+            return files.sum();
+        }
+
+        public long bytesIn() {
+            return bytesIn.sum();
+        }
+
+        public long bytesOut() {
+            return bytesOut.sum();
+        }
+
+        public List<Failure> failures() {
+            return Collections.unmodifiableList(new ArrayList<>(failures));
+        }
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double filesPerSecond() {
+            return elapsedNanos == 0 ? 0 : files() * 1e9 / elapsedNanos;
+        }
+
+        // megabytes of Gemtext read per second
+        public double megabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytesIn() * 1e9 / elapsedNanos / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d files (%d failed), %.1f MB in, %.1f MB out, %.2f s, %.1f files/s, %.2f MB/s",
+                    files(), failures.size(), bytesIn() / (1024.0 * 1024), bytesOut() / (1024.0 * 1024),
+                    elapsedNanos / 1e9, filesPerSecond(), megabytesPerSecond());
+        }
+    }
+
+    public static class Failure {
+        private final Path file;
+        private final Exception error;
+
+        Failure(Path file, Exception error) {
+            this.file = file;
+            this.error = error;
+        }
+
+        public Path file() {
+            return file;
+        }
+
+        public Exception error() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return file + ": " + error;
+        }
+    }
+
+    // usage: JemBatchConverter [--html] [--markdown] [--threads N] [--strict] [--no-images] [--no-image-links]
+    //                          <source directory> <target directory>
+    // without --html or --markdown only HTML is written
+    public static void main(String[] args) throws IOException {
+        JemBatchConverter converter = new JemBatchConverter();
+        List<String> paths = converter.parseArguments("JemBatchConverter", args);
+        if (paths == null) {
+            return;
+        }
+        Result result = converter.convert(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+        for (Failure failure : result.failures()) {
+            System.err.println(failure);
+        }
+        System.out.println(result);
+        if (!result.failures().isEmpty()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package net.prsv.jemtext;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// a compact binary form of a parsed document, to be stored and loaded again without parsing the source
+// (see JemPack for many documents in a single file)
+//
+// a document is written as
+//   varint    number of tokens
+//   varint    index of the title heading + 1, 0 if there is no title
+//   varint    length of the text in UTF-8 bytes
+//   per token the type ordinal (1 byte), the length of its text + 1 (0 if there is none) and
+//             heading: the level (1 byte) and the count
+//             link: the length of the alt text + 1 (0 if the alt text is the URL)
+//   the text  the texts of all tokens (link URL before alt text) in a row, encoded as UTF-8
+// with the lengths in chars, so that the text is decoded in one go and the tokens point into it
+// (a lone surrogate, which isn't valid UTF-16 anyway, comes back as '?' like String.getBytes() makes it).
+// On its own (write(), read(), toBytes(), fromBytes()) a document is preceded by the magic "JEMT", the
+// format version and its length in bytes as a varint.
+public final class JemBinary {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'J', 'E', 'M', 'T'};
+    private static final JemToken.Type[] TYPES = JemToken.Type.values();
+    private static final byte HEADING = (byte) JemToken.Type.JT_HEADING.ordinal();
+    private static final byte LINK = (byte) JemToken.Type.JT_LINK.ordinal();
+
+    private JemBinary() {
+    }
+
+    public static byte[] toBytes(JemDocument document) {
+        Bytes body = new Bytes(document.size() * 4 + 64);
+        encode(document.tokenStream(), body);
+        Bytes result = new Bytes(body.size + 16);
+        result.write(MAGIC, 0, MAGIC.length);
+        result.write(VERSION);
+        result.writeVarint(body.size);
+        result.write(body.bytes, 0, body.size);
+        return result.toByteArray();
+    }
+
+    // the stream is not closed
+    public static void write(JemDocument document, OutputStream output) throws IOException {
+        output.write(toBytes(document));
+    }
+
+    // reads a document written by write() or toBytes(), the stream is not closed
+    // throws an IOException if the data is not a document of this version
+    public static JemDocument read(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        byte[] magic = new byte[MAGIC.length + 1];
+        data.readFully(magic);
+        checkHeader(magic);
+        long length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            length |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                break;
+            }
+            if (shift > 28) {
+                throw new IOException("corrupt document: bad length");
+            }
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("corrupt document: bad length");
+        }
+        byte[] body = new byte[(int) length];
+        data.readFully(body);
+        return decode(ByteBuffer.wrap(body));
+    }
+
+    // reads a document written by write() or toBytes() from the buffer and moves its position past it
+    public static JemDocument fromBytes(ByteBuffer input) throws IOException {
+        try {
+            byte[] magic = new byte[MAGIC.length + 1];
+            input.get(magic);
+            checkHeader(magic);
+            int length = readVarint(input);
+            ByteBuffer body = input.slice();
+            if (length > body.remaining()) {
+                throw new IOException("corrupt document: truncated");
+            }
+            body.limit(length);
+            JemDocument document = decode(body);
+            input.position(input.position() + length);
+            return document;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("corrupt document: truncated", e);
+        }
+    }
+
+    private static void checkHeader(byte[] header) throws IOException {
+        if (!Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            throw new IOException("not a JemText document");
+        }
+        if (header[MAGIC.length] != VERSION) {
+            throw new IOException("unsupported JemText document version " + header[MAGIC.length]);
+        }
+    }
+
+    // writes the document without the magic, the version and the length
+    static void encode(JemTokenStore tokens, Bytes output) {
+        CharSequence source = tokens.source();
+        int titleIndex = -1;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (titleIndex < 0 && tokens.type(i) == JemToken.Type.JT_HEADING && tokens.headingLevel(i) == 1) {
+                titleIndex = i;
+            }
+            if (tokens.hasText(i)) {
+                text.append(source, tokens.start(i), tokens.end(i));
+            }
+            if (tokens.type(i) == JemToken.Type.JT_LINK && tokens.hasAltText(i)) {
+                text.append(source, tokens.altStart(i), tokens.altEnd(i));
+            }
+        }
+        byte[] utf8 = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        output.writeVarint(tokens.size());
+        output.writeVarint(titleIndex + 1);
+        output.writeVarint(utf8.length);
+        for (int i = 0; i < tokens.size(); i++) {
+            JemToken.Type type = tokens.type(i);
+            output.write(type.ordinal());
+            output.writeVarint(tokens.hasText(i) ? tokens.end(i) - tokens.start(i) + 1 : 0);
+            switch (type) {
+                case JT_HEADING:
+                    output.write(tokens.headingLevel(i));
+                    output.writeVarint(tokens.headingCount(i));
+                    break;
+                case JT_LINK:
+                    output.writeVarint(tokens.hasAltText(i) ? tokens.altEnd(i) - tokens.altStart(i) + 1 : 0);
+                    break;
+            }
+        }
+        output.write(utf8, 0, utf8.length);
+    }
+
+    // reads a document written by encode() from the remaining bytes of the buffer
+    static JemDocument decode(ByteBuffer input) throws IOException {
+        try {
+            int size = readVarint(input);
+            int titleIndex = readVarint(input) - 1;
+            int textBytes = readVarint(input);
+            if (size > input.remaining() || titleIndex >= size || textBytes > input.remaining()) {
+                throw new IOException("corrupt document: bad header");
+            }
+
+            // the tokens are read twice: first to find the text, then to point into it
+            int tokensStart = input.position();
+            for (int i = 0; i < size; i++) {
+                byte type = input.get();
+                readVarint(input);
+                if (type == HEADING) {
+                    input.get();
+                    readVarint(input);
+                } else if (type == LINK) {
+                    readVarint(input);
+                }
+            }
+            if (textBytes > input.remaining()) {
+                throw new IOException("corrupt document: text out of bounds");
+            }
+            String text;
+            if (input.hasArray()) {
+                text = new String(input.array(), input.arrayOffset() + input.position(), textBytes, StandardCharsets.UTF_8);
+            } else {
+                byte[] bytes = new byte[textBytes];
+                input.get(bytes);
+                text = new String(bytes, StandardCharsets.UTF_8);
+            }
+            input.position(tokensStart);
+
+            JemTokenStore store = new JemTokenStore(text, size);
+            int offset = 0;
+            for (int i = 0; i < size; i++) {
+                int type = input.get();
+                if (type < 0 || type >= TYPES.length) {
+                    throw new IOException("corrupt document: bad token type " + type);
+                }
+                int start = -1;
+                int end = -1;
+                int length = readVarint(input) - 1;
+                if (length >= 0) {
+                    start = offset;
+                    end = offset += length;
+                }
+                int a1 = -1;
+                int a2 = -1;
+                if (!isValidText(TYPES[type], length >= 0)) {
+                    throw new IOException("corrupt document: bad " + TYPES[type] + " token");
+                }
+                if (type == HEADING) {
+                    a1 = input.get();
+                    a2 = readVarint(input);
+                    if (a1 < 1 || a1 > 3 || a2 < 1) {
+                        throw new IOException("corrupt document: bad heading");
+                    }
+                } else if (type == LINK) {
+                    int altLength = readVarint(input) - 1;
+                    if (altLength >= 0) {
+                        a1 = offset;
+                        a2 = offset += altLength;
+                    }
+                }
+                if (offset > text.length()) {
+                    throw new IOException("corrupt document: text out of bounds");
+                }
+                store.set(i, TYPES[type], start, end, a1, a2);
+            }
+            if (offset != text.length()) {
+                throw new IOException("corrupt document: text out of bounds");
+            }
+            if (titleIndex >= 0 && (store.type(titleIndex) != JemToken.Type.JT_HEADING
+                    || store.headingLevel(titleIndex) != 1)) {
+                throw new IOException("corrupt document: bad title");
+            }
+            input.position(input.position() + textBytes);
+            return new JemDocument(store, titleIndex < 0 ? null : store.text(titleIndex));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("corrupt document: truncated", e);
+        }
+    }
+
+    // whether a token of the type may have a text (or not), as the tokenizer makes them
+    private static boolean isValidText(JemToken.Type type, boolean hasText) {
+        switch (type) {
+            case JT_PRE_BEGIN:
+                // the alt text of the block
+                return true;
+            case JT_PRE_END:
+            case JT_PASSTHRU_BEGIN:
+            case JT_PASSTHRU_END:
+            case JT_HR:
+                return !hasText;
+            default:
+                return hasText;
+        }
+    }
+
+    static int readVarint(ByteBuffer input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = input.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                // more than 31 bits
+                if (value < 0 || (shift == 28 && b > 7)) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("corrupt document: bad varint");
+    }
+
+    // a growable byte array
+    static final class Bytes {
+        byte[] bytes;
+        int size = 0;
+
+        Bytes(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void write(int b) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b, int offset, int length) {
+            ensureCapacity(size + length);
+            System.arraycopy(b, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeVarint(int value) {
+            ensureCapacity(size + 5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        // big-endian, like ByteBuffer
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// renders documents as HTML block by block and reuses the HTML of the blocks that did not change
+// since the previous render, e.g. for a live preview or for regenerating a page that changes a little
+//
+// a block is a paragraph, a heading, a link, a quote, a rule, a list (items separated by at most one
+// empty line), a pre block or a pass-through block; blank lines belong to the block before them.
+// The HTML of a block depends on nothing but its tokens and the render options, which are fixed per
+// renderer, so a block is keyed by a hash of its tokens (their content, not their position). The result
+// of a render reports which blocks are new, so that a client can patch those instead of replacing the page.
+// The HTML of all blocks put together is the same as JemDocument.html(strict, expandImages, linkImages),
+// and is bounded by the output limit of the document the same way (see JemLimits): with limits that
+// truncate, the render ends with the block that reaches the limit, cut at the limit.
+//
+// a block renderer remembers the blocks of the last render only; it is not thread-safe
+public class JemBlockRenderer {
+
+    private final boolean strict;
+    private final boolean expandImages;
+    private final boolean linkImages;
+
+    private Map<Key, String> previous = new HashMap<>();
+
+    public JemBlockRenderer(boolean strict, boolean expandImages, boolean linkImages) {
+        this.strict = strict;
+        this.expandImages = expandImages;
+        this.linkImages = linkImages;
+    }
+
+    public JemBlockRenderer() {
+        this(false, true, true);
+    }
+
+    public Result render(JemDocument document) {
+        JemTokenStore tokens = document.tokenStream();
+        JemLimits limits = document.limits();
+        // what is left of the output limit
+        long room = limits.maxOutput();
+        boolean cut = false;
+        Map<Key, String> current = new HashMap<>();
+        List<Block> blocks = new ArrayList<>();
+        int changed = 0;
+        int from = 0;
+        while (from < tokens.size() && !cut) {
+            int to = blockEnd(tokens, from);
+            Key key = key(tokens, from, to);
+            String html = previous.get(key);
+            boolean isNew = html == null;
+            if (isNew) {
+                changed++;
+                // the same block may come up more than once
+                html = current.get(key);
+            }
+            if (html == null || html.length() > room) {
+                StringBuilder output = new StringBuilder();
+                JemLimitedOutput limited = room == Long.MAX_VALUE ? null : new JemLimitedOutput(output, limits, room);
+                try {
+                    if (html == null) {
+                        JemRenderer.html(tokens, from, to, limited == null ? output : limited, null, strict,
+                                expandImages, linkImages);
+                    } else {
+                        // a block rendered before that no longer fits
+                        limited.append(html);
+                    }
+                } catch (IOException e) {
+                    // a StringBuilder does not throw
+                    throw new UncheckedIOException(e);
+                }
+                html = output.toString();
+                cut = limited != null && limited.cut();
+            }
+            room -= html.length();
+            // the part of a block that was cut is not reused
+            if (!cut) {
+                current.put(key, html);
+            }
+            blocks.add(new Block(blocks.size(), from, to, html, isNew));
+            from = to;
+        }
+        previous = current;
+        return new Result(blocks, changed);
+    }
+
+    // forgets the blocks of the last render
+    public void clear() {
+        previous = new HashMap<>();
+    }
+
+    // the end (exclusive) of the block that starts at from
+    static int blockEnd(JemTokenStore tokens, int from) {
+        int to = from + 1;
+        switch (tokens.type(from)) {
+            case JT_PRE_BEGIN:
+                while (to < tokens.size() && tokens.type(to) != JemToken.Type.JT_PRE_END) {
+                    to++;
+                }
+                to = Math.min(to + 1, tokens.size());
+                break;
+            case JT_PASSTHRU_BEGIN:
+                while (to < tokens.size() && tokens.type(to) != JemToken.Type.JT_PASSTHRU_END) {
+                    to++;
+                }
+                to = Math.min(to + 1, tokens.size());
+                break;
+            case JT_LIST_ITEM:
+                while (JemRenderer.isListItem(tokens, JemRenderer.nextListIndex(tokens, to - 1))) {
+                    to = JemRenderer.nextListIndex(tokens, to - 1) + 1;
+                }
+                break;
+        }
+        // blank lines and whatever is left over of interleaved pre and pass-through blocks render
+        // nothing of their own or belong to the block before them
+        while (to < tokens.size() && isContinuation(tokens, to)) {
+            to++;
+        }
+        return to;
+    }
+
+    private static boolean isContinuation(JemTokenStore tokens, int i) {
+        switch (tokens.type(i)) {
+            case JT_TEXT:
+                return tokens.isBlankText(i);
+            case JT_PRE_TEXT:
+            case JT_PRE_END:
+            case JT_PASSTHRU_TEXT:
+            case JT_PASSTHRU_END:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Key key(JemTokenStore tokens, int from, int to) {
+        CharSequence source = tokens.source();
+        JemHash hash = new JemHash();
+        for (int i = from; i < to; i++) {
+            hash.add(tokens.type(i).ordinal());
+            switch (tokens.type(i)) {
+                case JT_HEADING:
+                    // the id of a heading depends on its number
+                    hash.add(tokens.headingLevel(i)).add(tokens.headingCount(i));
+                    break;
+                case JT_LINK:
+                    hash.add(source, tokens.altStart(i), tokens.altEnd(i));
+                    break;
+            }
+            if (tokens.hasText(i)) {
+                hash.add(source, tokens.start(i), tokens.end(i));
+            }
+        }
+        return new Key(hash.high(), hash.low(), to - from);
+    }
+
+    private static final class Key {
+        final long hash1;
+        final long hash2;
+        final int size;
+
+        Key(long hash1, long hash2, int size) {
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash1 == other.hash1 && hash2 == other.hash2 && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash1;
+        }
+    }
+
+    public static final class Block {
+        private final int index;
+        private final int firstLine;
+        private final int endLine;
+        private final String html;
+        private final boolean changed;
+
+        Block(int index, int firstLine, int endLine, String html, boolean changed) {
+            this.index = index;
+            this.firstLine = firstLine;
+            this.endLine = endLine;
+            this.html = html;
+            this.changed = changed;
+        }
+
+        // the position of the block in the document
+        public int index() {
+            return index;
+        }
+
+        // the lines (tokens) of the block, [firstLine, endLine)
+        public int firstLine() {
+            return firstLine;
+        }
+
+        public int endLine() {
+            return endLine;
+        }
+
+        // may be empty, e.g. for a pass-through block in strict mode
+        public String html() {
+            return html;
+        }
+
+        // true if the HTML of the block was not part of the previous render
+        public boolean changed() {
+            return changed;
+        }
+    }
+
+    public static final class Result {
+        private final List<Block> blocks;
+        private final int changed;
+
+        Result(List<Block> blocks, int changed) {
+            this.blocks = Collections.unmodifiableList(blocks);
+            this.changed = changed;
+        }
+
+        public List<Block> blocks() {
+            return blocks;
+        }
+
+        public List<Block> changedBlocks() {
+            List<Block> result = new ArrayList<>();
+            for (Block block : blocks) {
+                if (block.changed()) {
+                    result.add(block);
+                }
+            }
+            return result;
+        }
+
+        // the number of blocks that were not part of the previous render
+        public int changedCount() {
+            return changed;
+        }
+
+        // the HTML of the whole document, NULL if it is empty (like JemDocument.html())
+        public String html() {
+            if (blocks.isEmpty()) {
+                return null;
+            }
+            StringBuilder output = new StringBuilder();
+            for (Block block : blocks) {
+                output.append(block.html());
+            }
+            return output.toString();
+        }
+
+        public void html(Appendable output) throws IOException {
+            for (Block block : blocks) {
+                output.append(block.html());
+            }
+        }
+    }
+}
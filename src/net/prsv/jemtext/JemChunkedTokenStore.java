@@ -0,0 +1,272 @@
+package net.prsv.jemtext;
+
+// the token stream of a document kept in chunks of lines (see JemIncrementalParser), read as one store
+// without copying the chunks: every chunk has a store of its own whose offsets are relative to the text of
+// the chunk and whose heading numbers count from the start of the chunk, and the offset of the chunk and
+// the number of headings before it are added when a token is read. An edit only replaces the chunks it
+// touches, all the others are shared with the store before the edit.
+//
+// the source is a JemChunkedTokenStore.Text over the texts of the chunks. The chunk of the last token
+// (and char) that was read is remembered, so reading the tokens in order costs a compare per read; the
+// hint is a plain field that threads rendering the same document may overwrite for one another, which
+// only costs them a lookup
+final class JemChunkedTokenStore extends JemTokenStore {
+
+    private final JemTokenStore[] chunks;
+    // the index of the first token of every chunk, the offset of its text and the headings before it,
+    // each with a last entry for the end
+    private final int[] firstTokens;
+    private final int[] offsets;
+    private final int[] headingsBefore;
+    private final int size;
+    private int hint = 0;
+
+    // chunks holds count stores, each with a token per line of its text; the document has the first size
+    // tokens, so the tokens of trailing empty lines are left out
+    JemChunkedTokenStore(JemTokenStore[] chunks, int count, int[] headings, int size) {
+        this(chunks, count, headings, size, texts(chunks, count));
+    }
+
+    private JemChunkedTokenStore(JemTokenStore[] chunks, int count, int[] headings, int size, Text text) {
+        super(text, 0);
+        this.chunks = chunks;
+        this.offsets = text.starts;
+        this.size = size;
+        firstTokens = new int[count + 1];
+        headingsBefore = new int[count + 1];
+        for (int k = 0; k < count; k++) {
+            firstTokens[k + 1] = firstTokens[k] + chunks[k].size();
+            headingsBefore[k + 1] = headingsBefore[k] + headings[k];
+        }
+    }
+
+    private static Text texts(JemTokenStore[] chunks, int count) {
+        String[] texts = new String[count];
+        for (int k = 0; k < count; k++) {
+            texts[k] = (String) chunks[k].source();
+        }
+        return new Text(texts, count);
+    }
+
+    // the chunk of token i
+    private int chunk(int i) {
+        int k = hint;
+        if (i >= firstTokens[k] && i < firstTokens[k + 1]) {
+            return k;
+        }
+        k = find(firstTokens, firstTokens.length - 1, i);
+        hint = k;
+        return k;
+    }
+
+    // the last k < count with starts[k] <= value, which skips the empty chunks before it
+    static int find(int[] starts, int count, int value) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= value) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int offset(int k, int position) {
+        // -1 (no text) stays -1
+        return position < 0 ? position : position + offsets[k];
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    JemToken.Type type(int i) {
+        int k = chunk(i);
+        return chunks[k].type(i - firstTokens[k]);
+    }
+
+    @Override
+    boolean hasText(int i) {
+        int k = chunk(i);
+        return chunks[k].hasText(i - firstTokens[k]);
+    }
+
+    @Override
+    int start(int i) {
+        int k = chunk(i);
+        return offset(k, chunks[k].start(i - firstTokens[k]));
+    }
+
+    @Override
+    int end(int i) {
+        int k = chunk(i);
+        return offset(k, chunks[k].end(i - firstTokens[k]));
+    }
+
+    @Override
+    String text(int i) {
+        int k = chunk(i);
+        return chunks[k].text(i - firstTokens[k]);
+    }
+
+    @Override
+    boolean isEmptyText(int i) {
+        int k = chunk(i);
+        return chunks[k].isEmptyText(i - firstTokens[k]);
+    }
+
+    @Override
+    boolean isBlankText(int i) {
+        int k = chunk(i);
+        return chunks[k].isBlankText(i - firstTokens[k]);
+    }
+
+    @Override
+    int aux1(int i) {
+        int k = chunk(i);
+        int j = i - firstTokens[k];
+        JemTokenStore chunk = chunks[k];
+        return chunk.type(j) == JemToken.Type.JT_LINK ? offset(k, chunk.aux1(j)) : chunk.aux1(j);
+    }
+
+    @Override
+    int aux2(int i) {
+        int k = chunk(i);
+        int j = i - firstTokens[k];
+        JemTokenStore chunk = chunks[k];
+        switch (chunk.type(j)) {
+            case JT_LINK:
+                return chunk.aux1(j) < 0 ? chunk.aux2(j) : chunk.aux2(j) + offsets[k];
+            case JT_HEADING:
+                return chunk.aux2(j) + headingsBefore[k];
+            default:
+                return chunk.aux2(j);
+        }
+    }
+
+    @Override
+    boolean hasAltText(int i) {
+        int k = chunk(i);
+        return chunks[k].hasAltText(i - firstTokens[k]);
+    }
+
+    @Override
+    int altStart(int i) {
+        int k = chunk(i);
+        return offset(k, chunks[k].altStart(i - firstTokens[k]));
+    }
+
+    @Override
+    int altEnd(int i) {
+        int k = chunk(i);
+        return offset(k, chunks[k].altEnd(i - firstTokens[k]));
+    }
+
+    @Override
+    String altText(int i) {
+        int k = chunk(i);
+        return chunks[k].altText(i - firstTokens[k]);
+    }
+
+    @Override
+    int headingLevel(int i) {
+        int k = chunk(i);
+        return chunks[k].headingLevel(i - firstTokens[k]);
+    }
+
+    @Override
+    int headingCount(int i) {
+        int k = chunk(i);
+        return chunks[k].headingCount(i - firstTokens[k]) + headingsBefore[k];
+    }
+
+    // the texts of the chunks one after the other, as a single CharSequence
+    static final class Text implements CharSequence {
+        private final String[] texts;
+        private final int count;
+        // the offset of every text, and the length at the end
+        final int[] starts;
+        private int hint = 0;
+        private String string;
+
+        Text(String[] texts, int count) {
+            this.texts = texts;
+            this.count = count;
+            starts = new int[count + 1];
+            for (int k = 0; k < count; k++) {
+                starts[k + 1] = starts[k] + texts[k].length();
+            }
+        }
+
+        private int chunk(int index) {
+            int k = hint;
+            if (index >= starts[k] && index < starts[k + 1]) {
+                return k;
+            }
+            k = find(starts, count, index);
+            hint = k;
+            return k;
+        }
+
+        @Override
+        public int length() {
+            return starts[count];
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= starts[count]) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            int k = chunk(index);
+            return texts[k].charAt(index - starts[k]);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > starts[count] || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + starts[count]);
+            }
+            if (start == end) {
+                return "";
+            }
+            int k = chunk(start);
+            if (end <= starts[k + 1]) {
+                // a token never spans chunks
+                return texts[k].substring(start - starts[k], end - starts[k]);
+            }
+            StringBuilder builder = new StringBuilder(end - start);
+            for (int position = start; position < end; k++) {
+                int next = Math.min(end, starts[k + 1]);
+                builder.append(texts[k], position - starts[k], next - starts[k]);
+                position = next;
+            }
+            return builder.toString();
+        }
+
+        // the whole text, which is only put together once
+        @Override
+        public String toString() {
+            String result = string;
+            if (result == null) {
+                StringBuilder builder = new StringBuilder(starts[count]);
+                for (int k = 0; k < count; k++) {
+                    builder.append(texts[k]);
+                }
+                result = builder.toString();
+                string = result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+// generates synthetic Gemtext documents for load and benchmark tests
+// the same seed and settings always give the same documents, so inputs can be reproduced offline
+//
+// every line is generated as a token of a given type: the type is picked by weight among the types that
+// are possible in the current pre/pass-through state (e.g. JT_PRE_TEXT and JT_PRE_END only inside a pre
+// block), so the weights set the proportions of the token types. Pre and pass-through blocks may nest
+// in each other, blocks still open at the end of a document are closed. The text mixes plain words,
+// characters HTML and Markdown escape, and (see nonAscii()) non-ASCII text covering the named entities
+// of JTUtils.fullEncode() as well as other scripts and characters outside the BMP.
+public class JemCorpusGenerator {
+
+    private static final JemToken.Type[] TYPES = JemToken.Type.values();
+
+    // none of the words starts with a character that would change the type of a text line
+    private static final String[] WORDS = {"the", "gemini", "capsule", "protocol", "lorem", "ipsum", "dolor",
+            "sit", "amet", "server", "client", "request", "response", "a", "of", "and", "is", "to", "in",
+            "<b>bold</b>", "&amp;", "AT&T", "\"quoted\"", "it's", "a*b", "snake_case", "[x]", "(y)", "x-y",
+            "1+1", "C#", "path\\to", "{z}", "`tick`"};
+    private static final String[] NON_ASCII_WORDS = {"caf\u00E9", "na\u00EFve", "\u00FCber", "Stra\u00DFe",
+            "\u0152uvre", "\u0161ahovnica", "\u0178", "\u20AC5", "\u2122", "\u201Cquoted\u201D", "\u2018single\u2019",
+            "a\u2013b", "a\u2014b", "\u2026", "\u00BD", "\u00A9", "a\u2003b", "\u03B1\u03B2\u03B3",
+            "\u043F\u0440\u0438\u0432\u0435\u0442", "\u65E5\u672C\u8A9E", "\uC548\uB155", "\u0645\u0631\u062D\u0628\u0627",
+            "\uD83D\uDE00", "\uD834\uDD1E"};
+    private static final String[] IMAGE_EXTENSIONS = {"png", "jpg", "jpeg", "gif", "jfif", "PNG", "JPG"};
+    private static final String[] PRE_ALT_TEXTS = {"", "", "java", "python", "sh", "ascii art"};
+
+    private final int[] weights = new int[TYPES.length];
+    private long seed = 0;
+    private double altText = 0.7;
+    private double images = 0.2;
+    private double nonAscii = 0.1;
+    private double longLines = 0.01;
+    private int longLineLength = 4096;
+
+    public JemCorpusGenerator() {
+        weight(JemToken.Type.JT_TEXT, 30);
+        weight(JemToken.Type.JT_LIST_ITEM, 10);
+        weight(JemToken.Type.JT_BLOCKQUOTE, 5);
+        weight(JemToken.Type.JT_PRE_BEGIN, 2);
+        weight(JemToken.Type.JT_PRE_TEXT, 20);
+        weight(JemToken.Type.JT_PRE_END, 4);
+        weight(JemToken.Type.JT_PASSTHRU_BEGIN, 1);
+        weight(JemToken.Type.JT_PASSTHRU_TEXT, 20);
+        weight(JemToken.Type.JT_PASSTHRU_END, 4);
+        weight(JemToken.Type.JT_HR, 1);
+        weight(JemToken.Type.JT_HEADING, 5);
+        weight(JemToken.Type.JT_LINK, 15);
+    }
+
+    public JemCorpusGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    // the relative frequency of a token type, 0 to leave it out
+    // a state in which every possible type has a weight of 0 falls back to JT_TEXT, JT_PRE_END or JT_PASSTHRU_END
+    public JemCorpusGenerator weight(JemToken.Type type, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must not be negative");
+        }
+        weights[type.ordinal()] = weight;
+        return this;
+    }
+
+    // the share of links that have an alt text
+    public JemCorpusGenerator altText(double altText) {
+        this.altText = ratio(altText);
+        return this;
+    }
+
+    // the share of links that point to an image (see JemRenderer.isImage())
+    public JemCorpusGenerator images(double images) {
+        this.images = ratio(images);
+        return this;
+    }
+
+    // the share of words that are non-ASCII
+    public JemCorpusGenerator nonAscii(double nonAscii) {
+        this.nonAscii = ratio(nonAscii);
+        return this;
+    }
+
+    // the share of text, list, quote and pre lines that are long, i.e. between length and 2 * length chars
+    public JemCorpusGenerator longLines(double longLines, int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be at least 1");
+        }
+        this.longLines = ratio(longLines);
+        this.longLineLength = length;
+        return this;
+    }
+
+    private static double ratio(double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1");
+        }
+        return ratio;
+    }
+
+    // a document of about the given size in UTF-8 bytes (see write())
+    public String generate(int bytes) {
+        StringBuilder output = new StringBuilder(bytes + 256);
+        try {
+            write(output, bytes, new SplittableRandom(seed));
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    // writes lines until the output has at least the given number of UTF-8 bytes, so a document ends
+    // up to one line (plus the toggles that close open blocks) larger than asked for
+    // returns the number of UTF-8 bytes written
+    public long write(Appendable output, long bytes) throws IOException {
+        return write(output, bytes, new SplittableRandom(seed));
+    }
+
+    // writes a UTF-8 encoded document, sizes up to gigabytes are streamed
+    public long write(Path file, long bytes) throws IOException {
+        return write(file, bytes, new SplittableRandom(seed));
+    }
+
+    // writes a tree of .gmi files under root, fileBytes in size on average (between half and one
+    // and a half times that), 16 files per directory and 16 directories per level
+    // every file has a seed of its own derived from the seed of the generator
+    // returns the number of UTF-8 bytes written
+    public long writeTree(Path root, int files, long fileBytes) throws IOException {
+        long total = 0;
+        for (int i = 0; i < files; i++) {
+            SplittableRandom random = new SplittableRandom(seed + 0x9E3779B97F4A7C15L * (i + 1));
+            long bytes = fileBytes / 2 + (fileBytes > 0 ? random.nextLong(fileBytes + 1) : 0);
+            Path file = root.resolve(treePath(i, files));
+            Files.createDirectories(file.getParent());
+            total += write(file, bytes, random);
+        }
+        return total;
+    }
+
+    // e.g. d01/d0a/page-000123.gmi, with as many directory levels as needed for 16 files per directory
+    private static String treePath(int index, int files) {
+        StringBuilder path = new StringBuilder();
+        int levels = 0;
+        for (long capacity = 16; capacity < files; capacity *= 16) {
+            levels++;
+        }
+        for (int level = levels; level > 0; level--) {
+            path.append('d').append(hex((index >>> (4 * level)) & 0xF)).append('/');
+        }
+        path.append("page-").append(String.format("%06d", index)).append(".gmi");
+        return path.toString();
+    }
+
+    private static String hex(int digit) {
+        return "0" + Character.forDigit(digit, 16);
+    }
+
+    private long write(Path file, long bytes, SplittableRandom random) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return write(writer, bytes, random);
+        }
+    }
+
+    private long write(Appendable output, long bytes, SplittableRandom random) throws IOException {
+        StringBuilder line = new StringBuilder();
+        long written = 0;
+        boolean pre = false;
+        boolean passthru = false;
+        while (written < bytes) {
+            line.setLength(0);
+            JemToken.Type type = pick(random, pre, passthru);
+            switch (type) {
+                case JT_PRE_BEGIN:
+                    line.append("```").append(PRE_ALT_TEXTS[random.nextInt(PRE_ALT_TEXTS.length)]);
+                    pre = true;
+                    break;
+                case JT_PRE_END:
+                    line.append("```");
+                    pre = false;
+                    break;
+                case JT_PASSTHRU_BEGIN:
+                case JT_PASSTHRU_END:
+                    line.append("+++");
+                    passthru = type == JemToken.Type.JT_PASSTHRU_BEGIN;
+                    break;
+                default:
+                    line(type, line, random);
+            }
+            line.append('\n');
+            output.append(line);
+            written += utf8Length(line);
+        }
+        // the toggles are recognised in every state, so the blocks can be closed in any order
+        if (pre) {
+            output.append("```\n");
+            written += 4;
+        }
+        if (passthru) {
+            output.append("+++\n");
+            written += 4;
+        }
+        return written;
+    }
+
+    // picks the type of the next line by weight among the types possible in the current state
+    private JemToken.Type pick(SplittableRandom random, boolean pre, boolean passthru) {
+        int total = 0;
+        for (JemToken.Type type : TYPES) {
+            if (isPossible(type, pre, passthru)) {
+                total += weights[type.ordinal()];
+            }
+        }
+        if (total == 0) {
+            return pre ? JemToken.Type.JT_PRE_END : passthru ? JemToken.Type.JT_PASSTHRU_END : JemToken.Type.JT_TEXT;
+        }
+        int pick = random.nextInt(total);
+        for (JemToken.Type type : TYPES) {
+            if (isPossible(type, pre, passthru)) {
+                pick -= weights[type.ordinal()];
+                if (pick < 0) {
+                    return type;
+                }
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static boolean isPossible(JemToken.Type type, boolean pre, boolean passthru) {
+        switch (type) {
+            case JT_PRE_BEGIN:
+                return !pre;
+            case JT_PRE_TEXT:
+            case JT_PRE_END:
+                return pre;
+            case JT_PASSTHRU_BEGIN:
+                return !passthru;
+            case JT_PASSTHRU_END:
+                return passthru;
+            case JT_PASSTHRU_TEXT:
+                // inside both blocks a line is pre text
+                return passthru && !pre;
+            default:
+                return !pre && !passthru;
+        }
+    }
+
+    // a line of the given type other than the toggles
+    private void line(JemToken.Type type, StringBuilder line, SplittableRandom random) {
+        switch (type) {
+            case JT_TEXT:
+                // some empty lines between the paragraphs
+                if (random.nextInt(5) > 0) {
+                    text(line, random, true);
+                }
+                break;
+            case JT_LIST_ITEM:
+                line.append("* ");
+                text(line, random, true);
+                break;
+            case JT_BLOCKQUOTE:
+                line.append(random.nextBoolean() ? "> " : ">");
+                text(line, random, true);
+                break;
+            case JT_PRE_TEXT:
+                int indent = random.nextInt(4) * 4;
+                for (int i = 0; i < indent; i++) {
+                    line.append(' ');
+                }
+                line.append("if (a < b && c > d) { s = \"");
+                text(line, random, true);
+                line.append("\"; }");
+                break;
+            case JT_PASSTHRU_TEXT:
+                line.append("<p class=\"note\">");
+                text(line, random, false);
+                line.append("</p>");
+                break;
+            case JT_HR:
+                line.append("===");
+                break;
+            case JT_HEADING:
+                int level = 1 + random.nextInt(3);
+                for (int i = 0; i < level; i++) {
+                    line.append('#');
+                }
+                line.append(' ');
+                text(line, random, false);
+                break;
+            case JT_LINK:
+                line.append(random.nextBoolean() ? "=> " : "=>");
+                url(line, random);
+                if (random.nextDouble() < altText) {
+                    line.append(' ');
+                    text(line, random, false);
+                }
+                break;
+        }
+    }
+
+    private void url(StringBuilder line, SplittableRandom random) {
+        int page = random.nextInt(100000);
+        if (random.nextDouble() < images) {
+            line.append(random.nextBoolean() ? "https://example.org/images/" : "images/").append(page).append('.')
+                    .append(IMAGE_EXTENSIONS[random.nextInt(IMAGE_EXTENSIONS.length)]);
+            return;
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                line.append("https://example.org/posts/").append(page).append(".html");
+                break;
+            case 1:
+                line.append("posts/").append(page).append(".gmi");
+                break;
+            default:
+                line.append("gemini://example.org/posts/").append(page).append(".gmi");
+        }
+    }
+
+    // a sentence of a few words, or a long line if allowed
+    private void text(StringBuilder line, SplittableRandom random, boolean mayBeLong) {
+        int end = mayBeLong && random.nextDouble() < longLines
+                ? line.length() + longLineLength + random.nextInt(longLineLength + 1)
+                : -1;
+        int words = 2 + random.nextInt(14);
+        for (int i = 0; end >= 0 ? line.length() < end : i < words; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            if (random.nextDouble() < nonAscii) {
+                line.append(NON_ASCII_WORDS[random.nextInt(NON_ASCII_WORDS.length)]);
+            } else {
+                line.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+        if (end < 0 || random.nextBoolean()) {
+            line.append('.');
+        }
+    }
+
+    static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                // a pair is 4 bytes
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // usage: JemCorpusGenerator [--seed N] [--files N] <size> <output>
+    // writes a single document of the given size (e.g. 512K, 64M, 2G) to the output file, or with --files
+    // a tree of that many documents of about that size each under the output directory
+    public static void main(String[] args) throws IOException {
+        JemCorpusGenerator generator = new JemCorpusGenerator();
+        int files = -1;
+        String size = null;
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed":
+                case "--files":
+                    if (i + 1 == args.length) {
+                        usage();
+                        return;
+                    }
+                    if (args[i].equals("--seed")) {
+                        generator.seed(Long.parseLong(args[++i]));
+                    } else {
+                        files = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                default:
+                    if (size == null) {
+                        size = args[i];
+                    } else if (output == null) {
+                        output = args[i];
+                    } else {
+                        usage();
+                        return;
+                    }
+            }
+        }
+        if (output == null) {
+            usage();
+            return;
+        }
+        long bytes = parseSize(size);
+        long written = files < 0 ? generator.write(Paths.get(output), bytes)
+                : generator.writeTree(Paths.get(output), files, bytes);
+        System.out.println(written + " bytes written");
+    }
+
+    // a number of bytes with an optional K, M or G suffix
+    static long parseSize(String size) {
+        long unit = 1;
+        switch (Character.toUpperCase(size.charAt(size.length() - 1))) {
+            case 'K':
+                unit = 1L << 10;
+                break;
+            case 'M':
+                unit = 1L << 20;
+                break;
+            case 'G':
+                unit = 1L << 30;
+                break;
+        }
+        return Long.parseLong(unit == 1 ? size : size.substring(0, size.length() - 1)) * unit;
+    }
+
+    private static void usage() {
+        System.err.println("usage: JemCorpusGenerator [--seed N] [--files N] <size> <output>");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,338 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// the result of parsing a Gemtext document
+// a document is immutable once created, so it can be cached and rendered by several threads at the same time
+public final class JemDocument {
+
+    private static final JemDocument EMPTY = new JemDocument(new JemTokenStore(""), null);
+
+    private final JemTokenStore tokenStream;
+    private final String title;
+    private final JemLimits limits;
+
+    JemDocument(JemTokenStore tokenStream, String title) {
+        this(tokenStream, title, JemLimits.NONE);
+    }
+
+    JemDocument(JemTokenStore tokenStream, String title, JemLimits limits) {
+        this.tokenStream = tokenStream;
+        this.title = title;
+        this.limits = limits;
+    }
+
+    // converts input into a stream of unambiguous tokens
+    // the first level 1 heading becomes the title of the document
+    // a NULL input gives an empty document
+    public static JemDocument parse(String input) {
+        return parse(input, JemLimits.NONE);
+    }
+
+    // same as parse(String), for an untrusted input: throws a JemLimitException (or cuts the document short)
+    // as soon as the input exceeds one of the limits, which also bound the output of the document
+    public static JemDocument parse(String input, JemLimits limits) {
+        if (input == null) return EMPTY;
+
+        JemProbe probe = JemProbe.parse("string");
+        // the tokens point into the input, the lines are never copied
+        JemTokenStore store = new JemTokenStore(input);
+        JemTokenizer tokenizer = JemTokenizer.limited(store, limits);
+        tokenizer.tokenize();
+        store.trimToSize();
+        if (probe != null) {
+            probe.parsed(store, input.length());
+        }
+        return new JemDocument(store, tokenizer.title(), copy(limits));
+    }
+
+    private static JemLimits copy(JemLimits limits) {
+        return limits == JemLimits.NONE ? limits : limits.copy();
+    }
+
+    // same as parse(String), but splits large inputs into chunks that are tokenized on the common pool
+    // the result is identical to parse(String)
+    public static JemDocument parseParallel(String input) {
+        return parseParallel(input, ForkJoinPool.commonPool());
+    }
+
+    public static JemDocument parseParallel(String input, ForkJoinPool pool) {
+        if (input == null) return EMPTY;
+        JemProbe probe = JemProbe.parse("parallel");
+        JemDocument document = JemParallelParser.parse(input, pool);
+        if (probe != null) {
+            probe.parsed(document.tokenStream, input.length());
+        }
+        return document;
+    }
+
+    // same as parse(String), but reads the input line by line instead of holding the whole document
+    // the reader is not closed
+    public static JemDocument read(Reader input) throws IOException {
+        return read(input, JemLimits.NONE);
+    }
+
+    // same as read(Reader), for an untrusted input, see parse(String, JemLimits)
+    // the input past a limit is not read. A limit is reported at the same line as parse() does, but the
+    // size of the input is only known as far as it has been read, so another limit may come first
+    public static JemDocument read(Reader input, JemLimits limits) throws IOException {
+        if (input == null) return EMPTY;
+
+        JemProbe probe = JemProbe.parse("reader");
+        // the lines are collected without their terminators in a single buffer the tokens point into
+        StringBuilder text = new StringBuilder();
+        JemTokenStore store = new JemTokenStore(text);
+        JemTokenizer tokenizer = JemTokenizer.limited(store, limits);
+        JemLineReader lines = new JemLineReader(input, text, limits);
+        while (!tokenizer.stopped() && lines.readLine()) {
+            tokenizer.next(lines.lineStart(), lines.lineEnd());
+        }
+        text.trimToSize();
+        store.trimToSize();
+        if (probe != null) {
+            probe.parsed(store, text.length());
+        }
+        return new JemDocument(store, tokenizer.title(), copy(limits));
+    }
+
+    // the stream is not closed
+    public static JemDocument read(InputStream input, Charset charset) throws IOException {
+        return read(input, charset, JemLimits.NONE);
+    }
+
+    public static JemDocument read(InputStream input, Charset charset, JemLimits limits) throws IOException {
+        if (input == null) return EMPTY;
+        return read(new InputStreamReader(input, charset), limits);
+    }
+
+    // reads a UTF-8 encoded Gemtext file
+    public static JemDocument read(Path path) throws IOException {
+        return read(path, JemLimits.NONE);
+    }
+
+    public static JemDocument read(Path path, JemLimits limits) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return read(input, StandardCharsets.UTF_8, limits);
+        }
+    }
+
+    // renders the token stream as HTML
+    // returns NULL if the token stream is empty
+    public String html(boolean strict, boolean expandImages, boolean linkImages) {
+        if (tokenStream.isEmpty()) {
+            return null;
+        }
+        StringBuilder output = new StringBuilder();
+        try {
+            html(output, strict, expandImages, linkImages);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    public String html() {
+        return html(false, true, true);
+    }
+
+    // renders the token stream as HTML directly into the output
+    // writes nothing if the token stream is empty
+    public void html(Appendable output, boolean strict, boolean expandImages, boolean linkImages) throws IOException {
+        output = limit(output);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.HTML, output, strict, expandImages, linkImages);
+        long escaped = JemRenderer.html(tokenStream, probe == null ? output : probe.output(), strict, expandImages, linkImages);
+        if (probe != null) {
+            probe.rendered(tokenStream, escaped);
+        }
+    }
+
+    public void html(Appendable output) throws IOException {
+        html(output, false, true, true);
+    }
+
+    // renders the body HTML and the TOC in a single pass, together with the title
+    // the HTML and the TOC are the same as html(strict, expandImages, linkImages) and toc() return
+    public Page page(boolean strict, boolean expandImages, boolean linkImages) {
+        if (tokenStream.isEmpty()) {
+            return new Page(null, null, title);
+        }
+        StringBuilder body = new StringBuilder();
+        StringBuilder toc = new StringBuilder();
+        try {
+            page(body, toc, strict, expandImages, linkImages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Page(body.toString(), toc.toString(), title);
+    }
+
+    public Page page() {
+        return page(false, true, true);
+    }
+
+    // streams the body HTML and the TOC into separate outputs in a single pass
+    // writes nothing if the token stream is empty
+    public void page(Appendable body, Appendable toc, boolean strict, boolean expandImages, boolean linkImages)
+            throws IOException {
+        body = limit(body);
+        toc = limit(toc);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.PAGE, body, strict, expandImages, linkImages);
+        if (probe == null) {
+            JemRenderer.page(tokenStream, body, toc, strict, expandImages, linkImages);
+            return;
+        }
+        JemMetricsOutput countedToc = probe.output(toc);
+        long escaped = JemRenderer.page(tokenStream, probe.output(), countedToc, strict, expandImages, linkImages);
+        probe.rendered(tokenStream, probe.output().length + countedToc.length, escaped);
+    }
+
+    public void page(Appendable body, Appendable toc) throws IOException {
+        page(body, toc, false, true, true);
+    }
+
+    // renders TOC as HTML
+    // returns NULL if the token stream is empty
+    public String toc() {
+        if(tokenStream.isEmpty()) {
+            return null;
+        }
+        StringBuilder output = new StringBuilder();
+        try {
+            toc(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    // writes nothing if the token stream is empty
+    public void toc(Appendable output) throws IOException {
+        output = limit(output);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.TOC, output, false, false, false);
+        long escaped = JemRenderer.toc(tokenStream, probe == null ? output : probe.output());
+        if (probe != null) {
+            probe.rendered(tokenStream, escaped);
+        }
+    }
+
+    // renders the token stream as valid (strict) Gemtext
+    // returns NULL if the token stream is empty
+    public String gemini() {
+        if(tokenStream.isEmpty()) {
+            return null;
+        }
+        StringBuilder output = new StringBuilder();
+        try {
+            gemini(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    // writes nothing if the token stream is empty
+    public void gemini(Appendable output) throws IOException {
+        output = limit(output);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.GEMINI, output, false, false, false);
+        JemRenderer.gemini(tokenStream, probe == null ? output : probe.output());
+        if (probe != null) {
+            probe.rendered(tokenStream, 0);
+        }
+    }
+
+    // render the token stream as a Markdown document
+    public String markdown(boolean expandImages) {
+        if(tokenStream.isEmpty()) {
+            return null;
+        }
+        StringBuilder output = new StringBuilder();
+        try {
+            markdown(output, expandImages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    public String markdown() {
+        return markdown(true);
+    }
+
+    // writes nothing if the token stream is empty
+    public void markdown(Appendable output, boolean expandImages) throws IOException {
+        output = limit(output);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.MARKDOWN, output, false, expandImages, false);
+        long escaped = JemRenderer.markdown(tokenStream, probe == null ? output : probe.output(), expandImages);
+        if (probe != null) {
+            probe.rendered(tokenStream, escaped);
+        }
+    }
+
+    public void markdown(Appendable output) throws IOException {
+        markdown(output, true);
+    }
+
+    // the output of a render, bounded by the output limit the document was parsed with
+    private Appendable limit(Appendable output) {
+        return limits.maxOutput() == Long.MAX_VALUE ? output : new JemLimitedOutput(output, limits);
+    }
+
+    // the tokens of the document
+    // every token is materialized on access
+    public List<JemToken> tokens() {
+        return tokenStream.tokens();
+    }
+
+    public String title() {
+        return this.title; // may be NULL!
+    }
+
+    JemTokenStore tokenStream() {
+        return tokenStream;
+    }
+
+    JemLimits limits() {
+        return limits;
+    }
+
+    // the number of tokens (one per line of the source)
+    public int size() {
+        return tokenStream.size();
+    }
+
+    // everything a page template needs, see page()
+    public static final class Page {
+        private final String html;
+        private final String toc;
+        private final String title;
+
+        Page(String html, String toc, String title) {
+            this.html = html;
+            this.toc = toc;
+            this.title = title;
+        }
+
+        public String html() {
+            return html; // may be NULL!
+        }
+
+        public String toc() {
+            return toc; // may be NULL!
+        }
+
+        public String title() {
+            return title; // may be NULL!
+        }
+    }
+}
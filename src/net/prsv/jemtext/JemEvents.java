@@ -0,0 +1,130 @@
+package net.prsv.jemtext;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// the Java Flight Recorder events of JemText, under "JemText" in JDK Mission Control
+//
+// like the JDK I/O events, the per-document events are only recorded if they take at least 1 ms; the
+// threshold can be changed in a .jfc file or on the command line, e.g.
+//   -XX:StartFlightRecording:+net.prsv.jemtext.Render#threshold=0ms
+// without a recording, or with the events disabled, isEnabled() is false and nothing is measured
+// (see JemProbe)
+final class JemEvents {
+
+    private static final String CATEGORY = "JemText";
+
+    private JemEvents() {
+    }
+
+    @Name("net.prsv.jemtext.Parse")
+    @Label("Gemtext Parse")
+    @Description("A Gemtext document parsed into tokens")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class Parse extends Event {
+        @Label("Mode")
+        @Description("string, parallel, reader or utf8")
+        String mode;
+
+        @Label("Input Length")
+        @Description("The length of the input in chars, or in bytes for UTF-8 input")
+        long inputLength;
+
+        @Label("Tokens")
+        @Description("The number of tokens, one per line without the trailing empty lines")
+        int tokens;
+
+        @Label("Headings")
+        int headings;
+
+        @Label("Links")
+        int links;
+    }
+
+    @Name("net.prsv.jemtext.Render")
+    @Label("Gemtext Render")
+    @Description("A Gemtext document rendered as HTML, Markdown, Gemtext or a TOC")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class Render extends Event {
+        @Label("Format")
+        String format;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Strict")
+        boolean strict;
+
+        @Label("Expand Images")
+        boolean expandImages;
+
+        @Label("Link Images")
+        boolean linkImages;
+
+        @Label("Output Length")
+        @Description("The length of the output in chars, or in bytes for UTF-8 output")
+        long outputLength;
+
+        @Label("Escaped")
+        @Description("The number of characters replaced with an escape sequence or an entity")
+        long escaped;
+    }
+
+    @Name("net.prsv.jemtext.Batch")
+    @Label("Gemtext Batch Conversion")
+    @Description("A directory tree converted by JemBatchConverter")
+    @Category(CATEGORY)
+    static final class Batch extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Files")
+        long files;
+
+        @Label("Failures")
+        long failures;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Parallelism")
+        int parallelism;
+    }
+
+    @Name("net.prsv.jemtext.BatchFile")
+    @Label("Gemtext Batch File")
+    @Description("A single file of a batch conversion")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class BatchFile extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Failed")
+        boolean failed;
+    }
+}
@@ -0,0 +1,435 @@
+package net.prsv.jemtext;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// a small HTTP server that serves a directory and converts .gmi files to HTML on every request
+//
+// a .gmi file is read as UTF-8 bytes and its HTML is streamed into the response in a minimal page (see
+// JemUtf8Document), other files are sent as they are; a directory is served by its index.gmi. Responses
+// carry an ETag and a Last-Modified date made of the file time and size, so a client that revalidates a
+// page it has (If-None-Match, If-Modified-Since) gets a 304 for the cost of a stat.
+// Every request runs on a thread of its own where the runtime has virtual threads (Java 21 and later).
+// Otherwise requests run on a pool of threads(n) platform threads, with up to queue(n) requests waiting
+// for one; when the queue is full as well, the server closes the connection of a new request.
+// Documents are parsed and rendered within the limits set (see JemLimits), a document over them is
+// answered with a 500, or, if the page is large enough to have its headers out already, the connection
+// is dropped before the response is complete. Limits that truncate cut the page short instead.
+//
+// the JDK server writes the headers and the body of a response separately; with Nagle's algorithm the
+// body waits for the ACK of the headers, which the client delays by up to 40 ms. main() turns it off with
+// the JVM-wide property sun.net.httpserver.nodelay, an application that embeds the gateway should run
+// with -Dsun.net.httpserver.nodelay=true (the property is read when the first server of the JVM is created)
+public class JemGateway {
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private final Path root;
+    private boolean strict = false;
+    private boolean expandImages = true;
+    private boolean linkImages = true;
+    private JemLimits limits = JemLimits.NONE;
+    private int threads = 4 * Runtime.getRuntime().availableProcessors();
+    private int queue = 1024;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public JemGateway(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    // the flags passed to the HTML renderer
+    public JemGateway strict(boolean strict) {
+        this.strict = strict;
+        return this;
+    }
+
+    public JemGateway expandImages(boolean expandImages) {
+        this.expandImages = expandImages;
+        return this;
+    }
+
+    public JemGateway linkImages(boolean linkImages) {
+        this.linkImages = linkImages;
+        return this;
+    }
+
+    public JemGateway limits(JemLimits limits) {
+        this.limits = limits.copy();
+        return this;
+    }
+
+    // the size of the thread pool and of its queue, where there are no virtual threads (see the class comment)
+    public JemGateway threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public JemGateway queue(int queue) {
+        if (queue < 1) {
+            throw new IllegalArgumentException("queue must be at least 1");
+        }
+        this.queue = queue;
+        return this;
+    }
+
+    // starts serving on the address (port 0 picks a free port, see port())
+    public JemGateway start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("already started");
+        }
+        server = HttpServer.create(address, 0);
+        executor = threadPerRequest();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // stops accepting requests, waits up to delay seconds for the running ones to finish
+    public void stop(int delay) {
+        if (server != null) {
+            server.stop(delay);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is not there before Java 21; the pool that takes its place
+    // rejects what doesn't fit in its queue, which the server answers by closing the connection
+    private ExecutorService threadPerRequest() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queue), runnable -> {
+                        Thread thread = new Thread(runnable, "jemtext-gateway");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        boolean aborted = false;
+        try {
+            // a response without a body (304, HEAD) is complete once its headers are sent, and the server
+            // closes the connection if the request body has not been read by then, even an empty one
+            exchange.getRequestBody().close();
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path == null || !path.startsWith("/")) {
+                sendError(exchange, 400, "Bad Request");
+                return;
+            }
+            Path file = root.resolve(path.substring(1)).normalize();
+            if (!file.startsWith(root)) {
+                sendError(exchange, 404, "Not Found");
+                return;
+            }
+            if (Files.isDirectory(file)) {
+                String rawPath = exchange.getRequestURI().getRawPath();
+                if (!rawPath.endsWith("/")) {
+                    // the path as it was sent, still encoded, and the query with it
+                    String query = exchange.getRequestURI().getRawQuery();
+                    exchange.getResponseHeaders().set("Location", rawPath + "/" + (query == null ? "" : "?" + query));
+                    sendError(exchange, 301, "Moved Permanently");
+                    return;
+                }
+                file = file.resolve("index.gmi");
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                sendError(exchange, 404, "Not Found");
+                return;
+            }
+            if (!attributes.isRegularFile()) {
+                sendError(exchange, 404, "Not Found");
+                return;
+            }
+            boolean gemtext = file.getFileName().toString().endsWith(".gmi");
+            long modified = attributes.lastModifiedTime().toMillis();
+            // the options are part of the tag, since the same file renders differently with others
+            String tag = "\"" + Long.toHexString(modified) + "-" + Long.toHexString(attributes.size())
+                    + (gemtext ? "-" + (strict ? 4 : 0) + (expandImages ? 2 : 0) + (linkImages ? 1 : 0) : "") + "\"";
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("ETag", tag);
+            headers.set("Last-Modified", HTTP_DATE.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(modified),
+                    ZoneOffset.UTC)));
+            if (isNotModified(exchange.getRequestHeaders(), tag, modified)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            boolean head = method.equals("HEAD");
+            if (!gemtext) {
+                String type = Files.probeContentType(file);
+                headers.set("Content-Type", type == null ? "application/octet-stream" : type);
+                exchange.sendResponseHeaders(200, head ? -1 : attributes.size());
+                if (!head) {
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        Files.copy(file, body);
+                    }
+                }
+                return;
+            }
+            JemUtf8Document document = JemUtf8Document.parse(read(file, attributes.size()), limits);
+            headers.set("Content-Type", "text/html; charset=utf-8");
+            if (head) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            PageOutput body = new PageOutput(exchange);
+            try {
+                writePage(document, file, body);
+            } catch (IOException | RuntimeException e) {
+                body.abort();
+                throw e;
+            }
+            body.close();
+        } catch (IOException | RuntimeException e) {
+            if (exchange.getResponseCode() < 0) {
+                sendError(exchange, 500, "Internal Server Error");
+            } else {
+                // once the headers are sent, all that can be done is to cut the response short: the server
+                // drops the connection of a handler that throws, where closing the exchange would end the
+                // response as if it was complete
+                aborted = true;
+                throw e;
+            }
+        } finally {
+            if (!aborted) {
+                exchange.close();
+            }
+        }
+    }
+
+    // reads a .gmi file, but not much more of it than the input limit
+    private ByteBuffer read(Path file, long size) throws IOException {
+        if (size <= limits.maxInput()) {
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+        // a byte past the limit is enough to reject the file, or to cut it at a character
+        ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(size, limits.maxInput() + 1));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // keep reading
+            }
+        }
+        return bytes.flip();
+    }
+
+    // the conditions of RFC 9110: If-None-Match wins over If-Modified-Since
+    private static boolean isNotModified(Headers request, String tag, long modified) {
+        String noneMatch = request.getFirst("If-None-Match");
+        if (noneMatch != null) {
+            for (String candidate : noneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String modifiedSince = request.getFirst("If-Modified-Since");
+        if (modifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(modifiedSince, HTTP_DATE).toInstant().toEpochMilli();
+                // the date has a resolution of seconds
+                return modified / 1000 <= since / 1000;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void writePage(JemUtf8Document document, Path file, OutputStream body) throws IOException {
+        String title = document.title() == null ? file.getFileName().toString() : document.title();
+        StringBuilder head = new StringBuilder();
+        head.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>");
+        JTUtils.htmlEncode(title, head);
+        head.append("</title>\n</head>\n<body>\n");
+        body.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        document.html(body, strict, expandImages, linkImages);
+        body.write("</body>\n</html>\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // holds back the start of a page: a page that fits in the buffer is sent in one piece with its length,
+    // a larger one is streamed in chunks as it is rendered
+    // (a small response in chunks waits on its last, empty chunk, which costs a delayed ACK per request)
+    private static final class PageOutput extends OutputStream {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final HttpExchange exchange;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int count = 0;
+        private OutputStream body;
+
+        PageOutput(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.length - count) {
+                flushBuffer();
+                if (length > buffer.length) {
+                    body.write(bytes, offset, length);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+
+        private void flushBuffer() throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            body.write(buffer, 0, count);
+            count = 0;
+        }
+
+        // drops the page when its render fails: nothing is sent if the page was still held back
+        void abort() {
+            buffer = null;
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(200, count);
+                body = exchange.getResponseBody();
+            }
+            body.write(buffer, 0, count);
+            body.close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = (status + " " + message + "\n").getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    // usage: JemGateway [--port N] [--threads N] [--strict] [--no-images] [--no-image-links] <directory>
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threads = 4 * Runtime.getRuntime().availableProcessors();
+        String directory = null;
+        boolean strict = false;
+        boolean expandImages = true;
+        boolean linkImages = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    if (i + 1 == args.length) {
+                        usage();
+                        return;
+                    }
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    if (i + 1 == args.length) {
+                        usage();
+                        return;
+                    }
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--strict":
+                    strict = true;
+                    break;
+                case "--no-images":
+                    expandImages = false;
+                    break;
+                case "--no-image-links":
+                    linkImages = false;
+                    break;
+                default:
+                    if (directory != null) {
+                        usage();
+                        return;
+                    }
+                    directory = args[i];
+            }
+        }
+        if (directory == null) {
+            usage();
+            return;
+        }
+        // see the class comment, a property set on the command line is left alone
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        JemGateway gateway = new JemGateway(Paths.get(directory)).strict(strict).expandImages(expandImages).linkImages(linkImages)
+                .threads(threads).start(new InetSocketAddress(port));
+        System.out.println("serving " + gateway.root + " on port " + gateway.port());
+    }
+
+    private static void usage() {
+        System.err.println("usage: JemGateway [--port N] [--threads N] [--strict] [--no-images] [--no-image-links] "
+                + "<directory>");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,61 @@
+package net.prsv.jemtext;
+
+// a fast 128-bit content hash (two independent 64-bit lanes), used as a cache key in place of the content
+// not cryptographic, but with 128 bits an accidental collision is not a practical concern
+final class JemHash {
+
+    private long h1 = 0xcbf29ce484222325L;
+    private long h2 = 0x9E3779B97F4A7C15L;
+
+    // FNV-1a in the first lane, a multiplicative hash in the second one
+    JemHash add(int value) {
+        h1 = (h1 ^ value) * 0x100000001b3L;
+        h2 = (h2 + value) * 0xC2B2AE3D27D4EB4FL;
+        return this;
+    }
+
+    JemHash add(CharSequence text, int start, int end) {
+        long a = h1;
+        long b = h2;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            a = (a ^ c) * 0x100000001b3L;
+            b = (b + c) * 0xC2B2AE3D27D4EB4FL;
+        }
+        h1 = a;
+        h2 = b;
+        // the length keeps "ab" + "c" apart from "a" + "bc"
+        return add(end - start);
+    }
+
+    JemHash add(byte[] bytes, int start, int end) {
+        long a = h1;
+        long b = h2;
+        for (int i = start; i < end; i++) {
+            int c = bytes[i] & 0xFF;
+            a = (a ^ c) * 0x100000001b3L;
+            b = (b + c) * 0xC2B2AE3D27D4EB4FL;
+        }
+        h1 = a;
+        h2 = b;
+        return add(end - start);
+    }
+
+    // the lanes, finished with the MurmurHash3 mixer
+    long high() {
+        return mix(h1);
+    }
+
+    long low() {
+        return mix(h2);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,332 @@
+package net.prsv.jemtext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// keeps a Gemtext document parsed while it is being edited, e.g. for a live preview
+//
+// the text is seen as a list of lines, the same lines String.split("\\R", -1) gives (so a text ending
+// with a line terminator ends with an empty line), kept in chunks of a few hundred lines. A chunk holds its
+// text, its tokens with offsets and heading numbers relative to the chunk, and the pre/pass-through state
+// before each of its lines. An edit replaces a range of lines with new ones: only the chunks around the
+// edit are split into lines and tokenized again, followed by the chunks after them until the state at a
+// chunk is the same as it was before the edit. All the other chunks are shared with the document before
+// the edit, whose offsets, heading numbers and title are resolved when they are read (see
+// JemChunkedTokenStore), so an edit costs the lines of the chunks it touches plus a pass over the list of
+// chunks, not the whole document. The resulting document is always identical to JemDocument.parse(text()).
+//
+// the lines keep their line terminators: the line before an edit and the last line of the edited range
+// keep theirs, and a terminator is only added where there was none (after the last line, or after lines
+// that are inserted), the same as the one of a line nearby. text() puts the text together on the first call
+// after an edit; an incremental parser is not thread-safe, but the documents it returns are immutable as usual
+public class JemIncrementalParser {
+
+    // a chunk ends after this many lines or chars, and an edited chunk smaller than MIN_CHUNK_LINES is
+    // merged with the chunk next to it
+    private static final int CHUNK_LINES = 256;
+    private static final int CHUNK_CHARS = 16 << 10;
+    private static final int MIN_CHUNK_LINES = 64;
+
+    private Chunk[] chunks;
+    // the index of the first line of every chunk, and the number of lines at the end
+    private int[] firstLines;
+    private JemDocument document;
+
+    public JemIncrementalParser(String text) {
+        if (text == null) {
+            text = "";
+        }
+        List<Chunk> chunked = new ArrayList<>();
+        split(text, 0, true, chunked);
+        chunks = chunked.toArray(new Chunk[0]);
+        update();
+    }
+
+    public JemDocument document() {
+        return document;
+    }
+
+    public String text() {
+        return document.tokenStream().source().toString();
+    }
+
+    public int lineCount() {
+        return firstLines[chunks.length];
+    }
+
+    // replaces the lines [fromLine, toLine) with the lines of replacement and returns the new document
+    // fromLine == toLine inserts the lines before fromLine (or after the last line if it is lineCount()),
+    // a NULL replacement deletes the lines; an empty replacement is a single empty line
+    public JemDocument replace(int fromLine, int toLine, String replacement) {
+        int lineCount = lineCount();
+        if (fromLine < 0 || toLine > lineCount || fromLine > toLine) {
+            throw new IndexOutOfBoundsException("lines " + fromLine + " to " + toLine + " of " + lineCount);
+        }
+        // the chunks from the line before the edit to the line after it, which have the terminators to keep
+        int first = chunkOf(Math.max(fromLine - 1, 0));
+        int last = chunkOf(Math.min(toLine, lineCount - 1));
+        Region region = new Region(first, last);
+
+        StringBuilder builder = new StringBuilder(region.text.length() + (replacement == null ? 0 : replacement.length()) + 2);
+        if (replacement == null) {
+            if (toLine < lineCount) {
+                // the line before the edit keeps its terminator, the lines after it follow
+                builder.append(region.text, 0, region.start(fromLine));
+                append(builder, region.text, region.start(toLine));
+            } else if (fromLine > 0) {
+                // the line before the edit becomes the last line
+                builder.append(region.text, 0, region.end(fromLine - 1));
+            }
+            // else everything is deleted, an empty text still has one (empty) line
+        } else {
+            if (fromLine < lineCount) {
+                builder.append(region.text, 0, region.start(fromLine));
+            } else {
+                // after the last line, which has no terminator yet
+                builder.append(region.text);
+                append(builder, region.terminatorNear(fromLine - 1), 0);
+            }
+            append(builder, replacement, 0);
+            if (toLine < lineCount) {
+                if (toLine > fromLine) {
+                    // the last line of the range keeps its terminator
+                    append(builder, region.text, region.end(toLine - 1));
+                } else {
+                    append(builder, region.terminatorNear(Math.max(fromLine - 1, 0)), 0);
+                    append(builder, region.text, region.start(toLine));
+                }
+            }
+        }
+
+        // a small chunk takes in the one after it, or the one before it at the end of the text
+        if (splitLines(builder, 0, builder.length()).length / 2 < MIN_CHUNK_LINES && chunks.length > 1) {
+            if (last + 1 < chunks.length) {
+                last++;
+                builder.append(chunks[last].text);
+            } else if (first > 0) {
+                first--;
+                builder.insert(0, chunks[first].text);
+            }
+        }
+
+        List<Chunk> replaced = new ArrayList<>();
+        int state = first == 0 ? 0 : chunks[first - 1].endState;
+        split(builder, state, last == chunks.length - 1, replaced);
+        state = replaced.get(replaced.size() - 1).endState;
+        // the chunks after the edit are tokenized again until one starts in the state it was tokenized in
+        int next = last + 1;
+        while (next < chunks.length && chunks[next].states[0] != state) {
+            Chunk chunk = chunks[next++];
+            Chunk retokenized = new Chunk(chunk.text, chunk.lineStarts, chunk.lineEnds, state);
+            replaced.add(retokenized);
+            state = retokenized.endState;
+        }
+
+        Chunk[] updated = new Chunk[first + replaced.size() + chunks.length - next];
+        System.arraycopy(chunks, 0, updated, 0, first);
+        for (int i = 0; i < replaced.size(); i++) {
+            updated[first + i] = replaced.get(i);
+        }
+        System.arraycopy(chunks, next, updated, first + replaced.size(), chunks.length - next);
+        chunks = updated;
+        update();
+        return document;
+    }
+
+    // appends the text from the given offset; a \n right after a \r would make a single terminator of the
+    // two and drop the empty line between them, so the \n becomes \r\n
+    private static void append(StringBuilder builder, CharSequence text, int from) {
+        if (from < text.length() && text.charAt(from) == '\n'
+                && builder.length() > 0 && builder.charAt(builder.length() - 1) == '\r') {
+            builder.append('\r');
+        }
+        builder.append(text, from, text.length());
+    }
+
+    // the first line of every chunk and the document made of the chunks
+    private void update() {
+        firstLines = new int[chunks.length + 1];
+        JemTokenStore[] stores = new JemTokenStore[chunks.length];
+        int[] headings = new int[chunks.length];
+        String title = null;
+        int size = 0;
+        for (int k = 0; k < chunks.length; k++) {
+            Chunk chunk = chunks[k];
+            firstLines[k + 1] = firstLines[k] + chunk.lineStarts.length;
+            stores[k] = chunk.tokens;
+            headings[k] = chunk.headings;
+            if (title == null) {
+                title = chunk.title;
+            }
+            if (chunk.lastContent >= 0) {
+                size = firstLines[k] + chunk.lastContent + 1;
+            }
+        }
+        // trailing empty lines have no tokens, but an empty text has one
+        if (chunks.length == 1 && chunks[0].text.isEmpty()) {
+            size = 1;
+        }
+        document = new JemDocument(new JemChunkedTokenStore(stores, chunks.length, headings, size), title);
+    }
+
+    private int chunkOf(int line) {
+        return JemChunkedTokenStore.find(firstLines, chunks.length, line);
+    }
+
+    // the text of the chunks [first, last] and the bounds of their lines in it
+    private final class Region {
+        final int first;
+        final int last;
+        final String text;
+        final int[] offsets;
+
+        Region(int first, int last) {
+            this.first = first;
+            this.last = last;
+            offsets = new int[last - first + 2];
+            StringBuilder builder = new StringBuilder();
+            for (int k = first; k <= last; k++) {
+                builder.append(chunks[k].text);
+                offsets[k - first + 1] = builder.length();
+            }
+            text = builder.toString();
+        }
+
+        int start(int line) {
+            int k = chunkOf(line);
+            return offsets[k - first] + chunks[k].lineStarts[line - firstLines[k]];
+        }
+
+        int end(int line) {
+            int k = chunkOf(line);
+            return offsets[k - first] + chunks[k].lineEnds[line - firstLines[k]];
+        }
+
+        // the terminator of the line, empty for the last line of the text
+        String terminator(int line) {
+            return text.substring(end(line), line + 1 < firstLines[last + 1] ? start(line + 1) : text.length());
+        }
+
+        // the terminator of the line, or of the closest line that has one, \n if no line has one
+        String terminatorNear(int line) {
+            for (int l = line; l >= firstLines[first]; l--) {
+                String terminator = terminator(l);
+                if (!terminator.isEmpty()) {
+                    return terminator;
+                }
+            }
+            for (int l = line + 1; l < firstLines[last + 1]; l++) {
+                String terminator = terminator(l);
+                if (!terminator.isEmpty()) {
+                    return terminator;
+                }
+            }
+            if (first > 0) {
+                // the last line of the chunk before
+                Chunk before = chunks[first - 1];
+                return before.text.substring(before.lineEnds[before.lineEnds.length - 1]);
+            }
+            return "\n";
+        }
+    }
+
+    // splits the text into chunks and tokenizes them, starting in the given state; a text that is not the
+    // end of the document ends with a line terminator, which doesn't start another line
+    private static void split(CharSequence text, int state, boolean end, List<Chunk> chunks) {
+        int[] lines = splitLines(text, 0, text.length());
+        int lineCount = lines.length / 2;
+        if (!end) {
+            lineCount--;
+        }
+        int line = 0;
+        while (line < lineCount) {
+            int chunkStart = lines[2 * line];
+            int last = line + 1;
+            while (last < lineCount && last - line < CHUNK_LINES && lines[2 * last] - chunkStart < CHUNK_CHARS) {
+                last++;
+            }
+            int chunkEnd = last < lineCount ? lines[2 * last] : text.length();
+            int[] starts = new int[last - line];
+            int[] ends = new int[last - line];
+            for (int i = line; i < last; i++) {
+                starts[i - line] = lines[2 * i] - chunkStart;
+                ends[i - line] = lines[2 * i + 1] - chunkStart;
+            }
+            Chunk chunk = new Chunk(text.subSequence(chunkStart, chunkEnd).toString(), starts, ends, state);
+            chunks.add(chunk);
+            state = chunk.endState;
+            line = last;
+        }
+    }
+
+    // splits [from, end) of the source into lines the same way as JemTokenizer.tokenize() does, but keeps
+    // the trailing empty lines; returns the bounds of the lines as start/end pairs
+    private static int[] splitLines(CharSequence source, int from, int end) {
+        int[] lines = new int[16];
+        int count = 0;
+        int lineStart = from;
+        int i = from;
+        while (true) {
+            boolean last = i == end;
+            if (last || JemLineReader.isLineTerminator(source.charAt(i))) {
+                if (count == lines.length) {
+                    lines = Arrays.copyOf(lines, count * 2);
+                }
+                lines[count++] = lineStart;
+                lines[count++] = i;
+                if (last) {
+                    return Arrays.copyOf(lines, count);
+                }
+                i++;
+                if (source.charAt(i - 1) == '\r' && i < end && source.charAt(i) == '\n') {
+                    i++;
+                }
+                lineStart = i;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // a run of lines, each with its terminator except the last line of the text, tokenized in the state
+    // the text is in before them; the tokens count the headings from the start of the chunk
+    private static final class Chunk {
+        final String text;
+        final int[] lineStarts;
+        final int[] lineEnds;
+        final JemTokenStore tokens;
+        // the state (see JemTokenizer.state()) before every line, and after the last one
+        final byte[] states;
+        final int endState;
+        final int headings;
+        // the first level 1 heading, NULL if there is none
+        final String title;
+        // the last line that is not empty, -1 if there is none
+        final int lastContent;
+
+        Chunk(String text, int[] lineStarts, int[] lineEnds, int state) {
+            this.text = text;
+            this.lineStarts = lineStarts;
+            this.lineEnds = lineEnds;
+            int lines = lineStarts.length;
+            tokens = new JemTokenStore(text);
+            tokens.ensureCapacity(lines);
+            states = new byte[lines];
+            JemTokenizer tokenizer = new JemTokenizer(tokens, state, 0);
+            int lastContent = -1;
+            for (int line = 0; line < lines; line++) {
+                states[line] = (byte) tokenizer.state();
+                tokenizer.next(lineStarts[line], lineEnds[line]);
+                if (lineStarts[line] < lineEnds[line]) {
+                    lastContent = line;
+                }
+            }
+            tokens.trimToSize();
+            endState = tokenizer.state();
+            headings = tokenizer.headingCount();
+            title = tokenizer.title();
+            this.lastContent = lastContent;
+        }
+    }
+}
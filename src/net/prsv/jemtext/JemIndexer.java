@@ -0,0 +1,331 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// builds a JemSearchIndex of many documents
+//
+// the text of paragraphs, headings, list items, quotes and the alt text of links is indexed, pre-formatted
+// and pass-through text only on request. The terms of the documents are collected on a work-stealing pool,
+// a batch of documents at a time, and are then added to the postings in document order, so that a document
+// is the same number in the index whatever the parallelism. The postings are kept as varint-encoded byte
+// arrays while the index is built
+public class JemIndexer {
+
+    private static final int BATCH_SIZE = 512;
+
+    private int headingWeight = 4;
+    private boolean preformatted = false;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // how much more an occurrence in a heading counts than one in the text
+    public JemIndexer headingWeight(int headingWeight) {
+        if (headingWeight < 1) {
+            throw new IllegalArgumentException("heading weight must be at least 1");
+        }
+        this.headingWeight = headingWeight;
+        return this;
+    }
+
+    // whether the text of pre and pass-through blocks (and the alt text of pre blocks) is indexed
+    public JemIndexer preformatted(boolean preformatted) {
+        this.preformatted = preformatted;
+        return this;
+    }
+
+    // the number of documents tokenized at the same time
+    public JemIndexer parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    // indexes documents under the given names, a document is its position in the lists
+    public JemSearchIndex index(List<String> names, List<JemDocument> documents) throws IOException {
+        if (names.size() != documents.size()) {
+            throw new IllegalArgumentException("there are " + names.size() + " names for " + documents.size()
+                    + " documents");
+        }
+        return build(names, documents::get);
+    }
+
+    // indexes every .gmi file under root (read as UTF-8), by its path relative to root ('/' separated)
+    // throws if a file cannot be read
+    public JemSearchIndex index(Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(".gmi"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<String> names = new ArrayList<>(files.size());
+        for (Path file : files) {
+            names.add(root.relativize(file).toString().replace(root.getFileSystem().getSeparator(), "/"));
+        }
+        return build(names, i -> JemDocument.read(files.get(i)));
+    }
+
+    private interface Source {
+        JemDocument document(int index) throws IOException;
+    }
+
+    private JemSearchIndex build(List<String> names, Source source) throws IOException {
+        Map<String, PostingList> postings = new HashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int from = 0; from < names.size(); from += BATCH_SIZE) {
+                List<Callable<Map<String, Posting>>> batch = new ArrayList<>();
+                for (int i = from; i < Math.min(from + BATCH_SIZE, names.size()); i++) {
+                    int index = i;
+                    batch.add(() -> terms(source.document(index)));
+                }
+                int document = from;
+                for (Future<Map<String, Posting>> terms : pool.invokeAll(batch)) {
+                    for (Map.Entry<String, Posting> term : get(terms).entrySet()) {
+                        postings.computeIfAbsent(term.getKey(), key -> new PostingList()).add(document, term.getValue());
+                    }
+                    document++;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return write(names, postings);
+    }
+
+    private static Map<String, Posting> get(Future<Map<String, Posting>> terms) throws IOException {
+        try {
+            return terms.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // the terms of a document with their score and sections
+    Map<String, Posting> terms(JemDocument document) {
+        JemTokenStore tokens = document.tokenStream();
+        CharSequence source = tokens.source();
+        Collector collector = new Collector();
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            collector.weight = 1;
+            switch (tokens.type(i)) {
+                case JT_HEADING:
+                    collector.section = tokens.headingCount(i);
+                    collector.weight = headingWeight;
+                    break;
+                case JT_LINK:
+                    if (tokens.hasAltText(i)) {
+                        JemSearchIndex.scanTerms(source, tokens.altStart(i), tokens.altEnd(i), term, collector);
+                    }
+                    continue;
+                case JT_TEXT:
+                case JT_LIST_ITEM:
+                case JT_BLOCKQUOTE:
+                    break;
+                case JT_PRE_BEGIN:
+                case JT_PRE_TEXT:
+                case JT_PASSTHRU_TEXT:
+                    if (preformatted) {
+                        break;
+                    }
+                    continue;
+                default:
+                    continue;
+            }
+            if (tokens.hasText(i)) {
+                JemSearchIndex.scanTerms(source, tokens.start(i), tokens.end(i), term, collector);
+            }
+        }
+        return collector.terms;
+    }
+
+    private static final class Collector implements JemSearchIndex.TermSink {
+        final Map<String, Posting> terms = new HashMap<>();
+        // the heading the current line belongs to, and what an occurrence in it counts
+        int section = 0;
+        int weight = 1;
+
+        @Override
+        public void term(String term) {
+            terms.computeIfAbsent(term, key -> new Posting()).add(weight, section);
+        }
+    }
+
+    // a term in a document
+    static final class Posting {
+        int score = 0;
+        int[] sections = new int[2];
+        int sectionCount = 0;
+
+        void add(int weight, int section) {
+            score += weight;
+            // the sections come in order
+            if (sectionCount == 0 || sections[sectionCount - 1] != section) {
+                if (sectionCount == sections.length) {
+                    sections = Arrays.copyOf(sections, sectionCount * 2);
+                }
+                sections[sectionCount++] = section;
+            }
+        }
+    }
+
+    // the encoded postings of a term, see JemSearchIndex
+    private static final class PostingList {
+        final JemBinary.Bytes bytes = new JemBinary.Bytes(16);
+        int documents = 0;
+        int lastDocument = -1;
+
+        void add(int document, Posting posting) {
+            bytes.writeVarint(document - lastDocument);
+            bytes.writeVarint(posting.score);
+            bytes.writeVarint(posting.sectionCount);
+            int previous = 0;
+            for (int i = 0; i < posting.sectionCount; i++) {
+                bytes.writeVarint(posting.sections[i] - previous);
+                previous = posting.sections[i];
+            }
+            lastDocument = document;
+            documents++;
+        }
+    }
+
+    private static JemSearchIndex write(List<String> names, Map<String, PostingList> postings) throws IOException {
+        byte[][] terms = new byte[postings.size()][];
+        PostingList[] lists = new PostingList[postings.size()];
+        int count = 0;
+        for (String term : postings.keySet()) {
+            terms[count++] = term.getBytes(StandardCharsets.UTF_8);
+        }
+        // in the order of their bytes, which find() searches by
+        Arrays.sort(terms, Arrays::compareUnsigned);
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = postings.get(new String(terms[i], StandardCharsets.UTF_8));
+        }
+
+        long size = JemSearchIndex.HEADER_SIZE + names.size() * 8L
+                + terms.length * (long) JemSearchIndex.TERM_ENTRY_SIZE + JemSearchIndex.TRAILER_SIZE;
+        for (int i = 0; i < terms.length; i++) {
+            size += terms[i].length + lists[i].bytes.size;
+        }
+        for (String name : names) {
+            size += name.length() * 3L;
+        }
+        // the file is built in a byte array
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("search index is larger than 2 GB");
+        }
+
+        JemBinary.Bytes file = new JemBinary.Bytes((int) size);
+        file.write(JemSearchIndex.MAGIC, 0, JemSearchIndex.MAGIC.length);
+        file.write(JemSearchIndex.VERSION);
+        file.write(new byte[3], 0, 3);
+        int[] nameOffsets = new int[names.size()];
+        int[] nameLengths = new int[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+            nameOffsets[i] = file.size;
+            nameLengths[i] = name.length;
+            file.write(name, 0, name.length);
+        }
+        int nameTable = file.size;
+        for (int i = 0; i < names.size(); i++) {
+            file.writeInt(nameOffsets[i]);
+            file.writeInt(nameLengths[i]);
+        }
+        int[] termOffsets = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termOffsets[i] = file.size;
+            file.write(terms[i], 0, terms[i].length);
+        }
+        int[] postingOffsets = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            postingOffsets[i] = file.size;
+            file.write(lists[i].bytes.bytes, 0, lists[i].bytes.size);
+        }
+        int termTable = file.size;
+        for (int i = 0; i < terms.length; i++) {
+            file.writeInt(termOffsets[i]);
+            file.writeInt(terms[i].length);
+            file.writeInt(lists[i].documents);
+            file.writeInt(postingOffsets[i]);
+            file.writeInt(lists[i].bytes.size);
+        }
+        file.writeInt(nameTable);
+        file.writeInt(names.size());
+        file.writeInt(termTable);
+        file.writeInt(terms.length);
+        file.write(JemSearchIndex.MAGIC, 0, JemSearchIndex.MAGIC.length);
+        return JemSearchIndex.read(ByteBuffer.wrap(file.bytes, 0, file.size).slice());
+    }
+
+    // usage: JemIndexer [--threads N] [--preformatted] [--heading-weight N] <directory> <index file>
+    public static void main(String[] args) throws IOException {
+        JemIndexer indexer = new JemIndexer();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    if (i + 1 == args.length) {
+                        usage();
+                        return;
+                    }
+                    indexer.parallelism(Integer.parseInt(args[++i]));
+                    break;
+                case "--heading-weight":
+                    if (i + 1 == args.length) {
+                        usage();
+                        return;
+                    }
+                    indexer.headingWeight(Integer.parseInt(args[++i]));
+                    break;
+                case "--preformatted":
+                    indexer.preformatted(true);
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        if (paths.size() != 2) {
+            usage();
+            return;
+        }
+        long started = System.nanoTime();
+        JemSearchIndex index = indexer.index(Paths.get(paths.get(0)));
+        index.write(Paths.get(paths.get(1)));
+        System.out.printf("%d documents, %d terms, %.2f s%n", index.documents(), index.terms(),
+                (System.nanoTime() - started) / 1e9);
+    }
+
+    private static void usage() {
+        System.err.println("usage: JemIndexer [--threads N] [--preformatted] [--heading-weight N] <directory> "
+                + "<index file>");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,49 @@
+package net.prsv.jemtext;
+
+// thrown when a document parsed with JemLimits exceeds one of them
+public class JemLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JemLimits.Limit limit;
+    private final long max;
+    private final int line;
+
+    JemLimitException(JemLimits.Limit limit, long max, int line) {
+        super(message(limit, max) + (line > 0 ? " at line " + line : ""));
+        this.limit = limit;
+        this.max = max;
+        this.line = line;
+    }
+
+    private static String message(JemLimits.Limit limit, long max) {
+        switch (limit) {
+            case INPUT:
+                return "input is longer than " + max;
+            case LINE_LENGTH:
+                return "line is longer than " + max;
+            case TOKENS:
+                return "more than " + max + " lines";
+            case HEADINGS:
+                return "more than " + max + " headings";
+            case BLOCK_LINES:
+                return "more than " + max + " lines in a pre or pass-through block";
+            default:
+                return "output is longer than " + max;
+        }
+    }
+
+    public JemLimits.Limit limit() {
+        return limit;
+    }
+
+    // the value of the limit
+    public long max() {
+        return max;
+    }
+
+    // the line (counted from 1) that exceeds the limit, 0 for the input and output limits
+    public int line() {
+        return line;
+    }
+}
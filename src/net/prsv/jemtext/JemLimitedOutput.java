@@ -0,0 +1,67 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+
+// wraps the output of a render of a document that was parsed with an output limit (see JemLimits)
+// and stops the render, or drops everything past the limit, once the limit is reached
+final class JemLimitedOutput implements Appendable {
+
+    private final Appendable output;
+    private final JemLimits limits;
+    private long room;
+    private boolean cut = false;
+
+    JemLimitedOutput(Appendable output, JemLimits limits) {
+        this(output, limits, limits.maxOutput());
+    }
+
+    // for a part of a render that has only room chars left of the limit (see JemBlockRenderer)
+    JemLimitedOutput(Appendable output, JemLimits limits, long room) {
+        this.output = output;
+        this.limits = limits;
+        this.room = room;
+    }
+
+    // whether the output was cut at the limit
+    boolean cut() {
+        return cut;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        if (end - start > room) {
+            limits.exceeded(JemLimits.Limit.OUTPUT, 0);
+            end = start + (int) room;
+            // a surrogate pair is not split
+            if (end > start && Character.isHighSurrogate(csq.charAt(end - 1))) {
+                end--;
+            }
+            room = 0;
+            cut = true;
+        } else {
+            room -= end - start;
+        }
+        if (end > start) {
+            output.append(csq, start, end);
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        if (room == 0 || (room == 1 && Character.isHighSurrogate(c))) {
+            limits.exceeded(JemLimits.Limit.OUTPUT, 0);
+            room = 0;
+            cut = true;
+            return this;
+        }
+        room--;
+        output.append(c);
+        return this;
+    }
+}
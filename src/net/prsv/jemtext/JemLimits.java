@@ -0,0 +1,147 @@
+package net.prsv.jemtext;
+
+// bounds on the work a document can cause, for parsing and rendering input that cannot be trusted
+//
+// a limit is checked as the input is read, so that an input over it is given up on at the line that
+// exceeds it (or before anything is read, for the size of the input), and the parse or the render throws
+// a JemLimitException. Limits that truncate cut the document short instead:
+// - input: only the input up to the limit is parsed
+// - line length: the line is cut at the limit
+// - tokens, headings, block lines: the document ends before the line that exceeds the limit
+// - output: the output ends at the limit, which may leave the HTML unbalanced
+// lengths are in chars, or in bytes for a JemUtf8Document. Every limit is unbounded until it is set.
+// The limits are copied when a document is parsed with them, and the output limit applies to every
+// render of that document
+public final class JemLimits {
+
+    public enum Limit {
+        INPUT,
+        LINE_LENGTH,
+        TOKENS,
+        HEADINGS,
+        BLOCK_LINES,
+        OUTPUT
+    }
+
+    static final JemLimits NONE = new JemLimits();
+
+    private long maxInput = Long.MAX_VALUE;
+    private int maxLineLength = Integer.MAX_VALUE;
+    private int maxTokens = Integer.MAX_VALUE;
+    private int maxHeadings = Integer.MAX_VALUE;
+    private int maxBlockLines = Integer.MAX_VALUE;
+    private long maxOutput = Long.MAX_VALUE;
+    private boolean truncate = false;
+
+    // the length of the whole input
+    public JemLimits maxInput(long maxInput) {
+        this.maxInput = check(maxInput, "max input");
+        return this;
+    }
+
+    // the length of a line, without its terminator
+    public JemLimits maxLineLength(int maxLineLength) {
+        this.maxLineLength = (int) check(maxLineLength, "max line length");
+        return this;
+    }
+
+    // the number of tokens, which is the number of lines
+    public JemLimits maxTokens(int maxTokens) {
+        this.maxTokens = (int) check(maxTokens, "max tokens");
+        return this;
+    }
+
+    public JemLimits maxHeadings(int maxHeadings) {
+        this.maxHeadings = (int) check(maxHeadings, "max headings");
+        return this;
+    }
+
+    // the number of lines in a single pre or pass-through block, which bounds a block that is never closed
+    public JemLimits maxBlockLines(int maxBlockLines) {
+        this.maxBlockLines = (int) check(maxBlockLines, "max block lines");
+        return this;
+    }
+
+    // the length of the output of a single render (of each output, for JemDocument.page())
+    public JemLimits maxOutput(long maxOutput) {
+        this.maxOutput = check(maxOutput, "max output");
+        return this;
+    }
+
+    // whether an input over a limit is cut short rather than rejected
+    public JemLimits truncate(boolean truncate) {
+        this.truncate = truncate;
+        return this;
+    }
+
+    private static long check(long max, String name) {
+        if (max < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return max;
+    }
+
+    public long maxInput() {
+        return maxInput;
+    }
+
+    public int maxLineLength() {
+        return maxLineLength;
+    }
+
+    public int maxTokens() {
+        return maxTokens;
+    }
+
+    public int maxHeadings() {
+        return maxHeadings;
+    }
+
+    public int maxBlockLines() {
+        return maxBlockLines;
+    }
+
+    public long maxOutput() {
+        return maxOutput;
+    }
+
+    public boolean truncate() {
+        return truncate;
+    }
+
+    public long max(Limit limit) {
+        switch (limit) {
+            case INPUT:
+                return maxInput;
+            case LINE_LENGTH:
+                return maxLineLength;
+            case TOKENS:
+                return maxTokens;
+            case HEADINGS:
+                return maxHeadings;
+            case BLOCK_LINES:
+                return maxBlockLines;
+            default:
+                return maxOutput;
+        }
+    }
+
+    JemLimits copy() {
+        JemLimits copy = new JemLimits();
+        copy.maxInput = maxInput;
+        copy.maxLineLength = maxLineLength;
+        copy.maxTokens = maxTokens;
+        copy.maxHeadings = maxHeadings;
+        copy.maxBlockLines = maxBlockLines;
+        copy.maxOutput = maxOutput;
+        copy.truncate = truncate;
+        return copy;
+    }
+
+    // called when a limit is exceeded (at the given line, or 0), throws unless the limits truncate
+    void exceeded(Limit limit, int line) {
+        if (!truncate) {
+            throw new JemLimitException(limit, max(limit), line);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// reads lines from a Reader through a reusable buffer and appends them (without terminators) to the text
+// of the document, which then serves as the source of a JemTokenStore
+// the lines are the same as the ones produced by String.split("\\R"):
+// \r\n, \n, \u000B, \f, \r, \u0085, \u2028 and \u2029 end a line, trailing empty lines are dropped,
+// and an empty input consists of a single empty line
+// the input and its lines are cut at the limits (see JemLimits), as they are read
+class JemLineReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final StringBuilder text;
+    private final JemLimits limits;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private boolean sawInput = false;
+    private long input = 0;
+    // the lines read so far, and what is left of the limit of the current one
+    private int lines = 0;
+    private int room = 0;
+    // whether the current line was cut at the limit, a line cut to nothing is not an empty line
+    private boolean cut = false;
+    // the line (counted from 1) that is over the line length limit, if the limits don't truncate: reading
+    // stops there, but the error waits for the line's turn, after the empty lines held back before it
+    private int tooLong = 0;
+
+    private int lineStart = 0;
+    private int lineEnd = 0;
+
+    // empty lines are held back until a non-empty line shows that they are not trailing
+    private int emptyRun = 0;
+    private int pendingEmptyLines = 0;
+    private boolean hasNextLine = false;
+    private int nextStart = 0;
+    private int nextEnd = 0;
+
+    JemLineReader(Reader reader, StringBuilder text) {
+        this(reader, text, JemLimits.NONE);
+    }
+
+    JemLineReader(Reader reader, StringBuilder text, JemLimits limits) {
+        this.reader = reader;
+        this.text = text;
+        this.limits = limits;
+    }
+
+    // advances to the next line, returns false at the end of the input
+    boolean readLine() throws IOException {
+        if (pendingEmptyLines > 0) {
+            pendingEmptyLines--;
+            lineStart = lineEnd = nextStart;
+            return true;
+        }
+        if (hasNextLine) {
+            hasNextLine = false;
+            checkLength();
+            lineStart = nextStart;
+            lineEnd = nextEnd;
+            return true;
+        }
+        while (true) {
+            int start = text.length();
+            if (!readRawLine()) {
+                if (!sawInput) {
+                    sawInput = true;
+                    lineStart = lineEnd = start;
+                    return true;
+                }
+                return false;
+            }
+            int end = text.length();
+            if (start == end && !cut && tooLong == 0) {
+                emptyRun++;
+                continue;
+            }
+            if (emptyRun > 0) {
+                pendingEmptyLines = emptyRun - 1;
+                emptyRun = 0;
+                hasNextLine = true;
+                nextStart = start;
+                nextEnd = end;
+                lineStart = lineEnd = start;
+                return true;
+            }
+            checkLength();
+            lineStart = start;
+            lineEnd = end;
+            return true;
+        }
+    }
+
+    private void checkLength() {
+        if (tooLong > 0) {
+            limits.exceeded(JemLimits.Limit.LINE_LENGTH, tooLong);
+        }
+    }
+
+    // offsets of the current line in the text
+    int lineStart() {
+        return lineStart;
+    }
+
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    // removes the current line from the text, for a reader that doesn't need all of them (see JemOutline)
+    // a non-empty line is always the last thing appended to the text, so only the offsets of the lines
+    // after it change
+    void dropLine() {
+        if (lineEnd > lineStart) {
+            text.setLength(lineStart);
+        }
+    }
+
+    // appends everything up to the next line terminator (or the end of the input) to the text
+    // returns false if the input ended before anything was read
+    private boolean readRawLine() throws IOException {
+        boolean any = false;
+        room = limits.maxLineLength();
+        cut = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (any) {
+                    lines++;
+                }
+                return any;
+            }
+            any = true;
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (isLineTerminator(c)) {
+                    if (!appendToLine(start, position)) {
+                        return true;
+                    }
+                    position++;
+                    if (c == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+                        position++;
+                    }
+                    lines++;
+                    return true;
+                }
+                position++;
+            }
+            if (!appendToLine(start, position)) {
+                return true;
+            }
+        }
+    }
+
+    // appends a part of the buffer to the current line, up to the maximum line length
+    // returns false if the line is too long and the limits don't truncate it
+    private boolean appendToLine(int from, int to) {
+        if (to - from > room) {
+            if (!limits.truncate()) {
+                tooLong = ++lines;
+                return false;
+            }
+            to = from + room;
+            // a surrogate pair is not split
+            if (to > from && Character.isHighSurrogate(buffer[to - 1])) {
+                to--;
+            }
+            room = 0;
+            cut = true;
+        } else {
+            room -= to - from;
+        }
+        text.append(buffer, from, to - from);
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            eof = true;
+            position = 0;
+            limit = 0;
+            return false;
+        }
+        input += read;
+        if (input > limits.maxInput()) {
+            limits.exceeded(JemLimits.Limit.INPUT, 0);
+            // the rest of the input is never read
+            read -= (int) (input - limits.maxInput());
+            if (read > 0 && Character.isHighSurrogate(buffer[read - 1])) {
+                read--;
+            }
+            eof = true;
+        }
+        if (read > 0) {
+            sawInput = true;
+        }
+        position = 0;
+        limit = read;
+        return read > 0;
+    }
+
+    static boolean isLineTerminator(char c) {
+        return (c >= '\n' && c <= '\r') || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,453 @@
+package net.prsv.jemtext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// builds the link graph of a capsule (a directory tree of .gmi files) and finds the links that point to
+// missing local files and the pages no other page links to
+//
+// the links of every document are read on a work-stealing pool with JemOutline, so nothing but the links
+// of one document per thread is held at a time. Links with a scheme or a host are external and are not
+// followed; the others are resolved against the path of their document (fragment and query removed,
+// percent-escapes decoded, dot segments removed as in RFC 3986) and checked against the files of the tree.
+// A link to a directory goes to its index.gmi.
+// The graph keeps a node per document (its index in the sorted list of document paths) and the distinct
+// documents each one links to, as int arrays; the file lists are sorted arrays searched by bisection,
+// so the memory needed is a few dozen bytes per file and four per link
+public class JemLinkChecker {
+
+    private static final String INDEX = "index.gmi";
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // the number of documents read at the same time
+    public JemLinkChecker parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    // throws only if the tree cannot be walked, documents that cannot be read end up in the result
+    public Result check(Path root) throws IOException {
+        long started = System.nanoTime();
+        List<String> documents = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        List<String> directories = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.forEach(path -> {
+                if (path.equals(root)) {
+                    return;
+                }
+                String name = relativePath(root, path);
+                if (Files.isDirectory(path)) {
+                    directories.add(name);
+                } else if (name.endsWith(".gmi")) {
+                    documents.add(name);
+                } else {
+                    files.add(name);
+                }
+            });
+        }
+        Result result = new Result(root, sorted(documents), sorted(files), sorted(directories));
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int i = 0; i < result.documents.length; i++) {
+                int document = i;
+                pool.execute(() -> checkDocument(document, result));
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        result.finish(System.nanoTime() - started);
+        return result;
+    }
+
+    private static String relativePath(Path root, Path path) {
+        String name = root.relativize(path).toString();
+        return File.separatorChar == '/' ? name : name.replace(File.separatorChar, '/');
+    }
+
+    private static String[] sorted(List<String> names) {
+        String[] array = names.toArray(new String[0]);
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static void checkDocument(int document, Result result) {
+        String path = result.documents[document];
+        List<JemToken.JemLink> links;
+        try {
+            links = JemOutline.read(result.root.resolve(path)).links();
+        } catch (IOException | RuntimeException e) {
+            result.failures.add(new JemBatchConverter.Failure(result.root.resolve(path), e));
+            result.targets[document] = new int[0];
+            return;
+        }
+        int[] targets = new int[links.size()];
+        int count = 0;
+        int external = 0;
+        for (JemToken.JemLink link : links) {
+            String target = resolve(path, link.url);
+            if (target == null) {
+                external++;
+                continue;
+            }
+            int id = Arrays.binarySearch(result.documents, target);
+            if (id < 0 && Arrays.binarySearch(result.directories, target) >= 0) {
+                id = Arrays.binarySearch(result.documents, target + "/" + INDEX);
+                if (id < 0) {
+                    result.broken.add(new BrokenLink(path, link.url, target + "/" + INDEX));
+                    continue;
+                }
+            }
+            if (id >= 0) {
+                targets[count++] = id;
+            } else if (Arrays.binarySearch(result.files, target) < 0) {
+                result.broken.add(new BrokenLink(path, link.url, target));
+            }
+        }
+        result.links.add(links.size() - external);
+        result.externalLinks.add(external);
+        // the same target counts once per document
+        Arrays.sort(targets, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || targets[distinct - 1] != targets[i]) {
+                targets[distinct++] = targets[i];
+            }
+        }
+        result.targets[document] = Arrays.copyOf(targets, distinct);
+    }
+
+    // resolves a link of the document at path (relative to the root, '/' separated) to the path of its target
+    // returns NULL if the link has a scheme or a host
+    static String resolve(String path, String url) {
+        int end = url.length();
+        for (int i = 0; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        if (url.startsWith("//") || hasScheme(url, end)) {
+            return null;
+        }
+        String reference = decode(url, end);
+        if (reference.isEmpty()) {
+            // a link to a fragment of the document itself
+            return path;
+        }
+        List<String> segments = new ArrayList<>();
+        if (!reference.startsWith("/")) {
+            int slash = path.lastIndexOf('/');
+            if (slash >= 0) {
+                segments.addAll(Arrays.asList(path.substring(0, slash).split("/")));
+            }
+        }
+        boolean directory = false;
+        for (String segment : reference.split("/", -1)) {
+            directory = false;
+            switch (segment) {
+                case "":
+                case ".":
+                    directory = true;
+                    break;
+                case "..":
+                    // there is nothing above the root
+                    if (!segments.isEmpty()) {
+                        segments.remove(segments.size() - 1);
+                    }
+                    directory = true;
+                    break;
+                default:
+                    segments.add(segment);
+            }
+        }
+        if (directory) {
+            segments.add(INDEX);
+        }
+        return String.join("/", segments);
+    }
+
+    // scheme = ALPHA *( ALPHA / DIGIT / "+" / "-" / "." ) ":"
+    private static boolean hasScheme(String url, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return i > 0;
+            }
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            if (!letter && (i == 0 || !((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'))) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // decodes percent-escapes as UTF-8, a malformed escape is kept as it is
+    private static String decode(String url, int end) {
+        if (url.lastIndexOf('%', end - 1) < 0) {
+            return url.substring(0, end);
+        }
+        StringBuilder decoded = new StringBuilder(end);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < end) {
+            while (i + 2 < end && url.charAt(i) == '%' && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2))) {
+                bytes.write(Integer.parseInt(url.substring(i + 1, i + 3), 16));
+                i += 3;
+            }
+            if (bytes.size() > 0) {
+                decoded.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                bytes.reset();
+            }
+            if (i < end) {
+                decoded.append(url.charAt(i++));
+            }
+        }
+        return decoded.toString();
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    public static final class BrokenLink {
+        private final String document;
+        private final String url;
+        private final String target;
+
+        BrokenLink(String document, String url, String target) {
+            this.document = document;
+            this.url = url;
+            this.target = target;
+        }
+
+        // the document the link is in, relative to the root
+        public String document() {
+            return document;
+        }
+
+        // the URL as it is written
+        public String url() {
+            return url;
+        }
+
+        // the missing file the URL resolves to, relative to the root
+        public String target() {
+            return target;
+        }
+
+        @Override
+        public String toString() {
+            return document + ": " + url + " (" + target + ")";
+        }
+    }
+
+    // the link graph and what is wrong with it
+    // the nodes are the documents in the order of their paths (relative to the root, '/' separated)
+    public static final class Result {
+        private final Path root;
+        private final String[] documents;
+        private final String[] files;
+        private final String[] directories;
+        // the distinct documents each document links to, in ascending order
+        private final int[][] targets;
+        private int[] inbound;
+        private final LongAdder links = new LongAdder();
+        private final LongAdder externalLinks = new LongAdder();
+        private final ConcurrentLinkedQueue<BrokenLink> broken = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<JemBatchConverter.Failure> failures = new ConcurrentLinkedQueue<>();
+        private List<BrokenLink> brokenLinks;
+        private long elapsedNanos;
+
+        Result(Path root, String[] documents, String[] files, String[] directories) {
+            this.root = root;
+            this.documents = documents;
+            this.files = files;
+            this.directories = directories;
+            this.targets = new int[documents.length][];
+        }
+
+        private void finish(long elapsedNanos) {
+            inbound = new int[documents.length];
+            for (int document = 0; document < targets.length; document++) {
+                for (int target : targets[document]) {
+                    if (target != document) {
+                        inbound[target]++;
+                    }
+                }
+            }
+            List<BrokenLink> sorted = new ArrayList<>(broken);
+            sorted.sort((a, b) -> {
+                int byDocument = a.document.compareTo(b.document);
+                return byDocument != 0 ? byDocument : a.url.compareTo(b.url);
+            });
+            brokenLinks = Collections.unmodifiableList(sorted);
+            broken.clear();
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // the number of documents (nodes)
+        public int documents() {
+            return documents.length;
+        }
+
+        public String path(int document) {
+            return documents[document];
+        }
+
+        // the node of a document, or -1 if there is no such document
+        public int id(String path) {
+            int id = Arrays.binarySearch(documents, path);
+            return id < 0 ? -1 : id;
+        }
+
+        // the distinct documents a document links to
+        public int[] outbound(int document) {
+            return targets[document].clone();
+        }
+
+        // the number of other documents that link to a document
+        public int inbound(int document) {
+            return inbound[document];
+        }
+
+        // the documents no other document links to, except for the index.gmi of the root
+        public List<String> orphans() {
+            List<String> orphans = new ArrayList<>();
+            for (int document = 0; document < documents.length; document++) {
+                if (inbound[document] == 0 && !documents[document].equals(INDEX)) {
+                    orphans.add(documents[document]);
+                }
+            }
+            return orphans;
+        }
+
+        // the links to missing local files, by document and URL
+        public List<BrokenLink> brokenLinks() {
+            return brokenLinks;
+        }
+
+        // the number of local links (including the broken ones) and of external links
+        public long links() {
+            return links.sum();
+        }
+
+        public long externalLinks() {
+            return externalLinks.sum();
+        }
+
+        public List<JemBatchConverter.Failure> failures() {
+            return Collections.unmodifiableList(new ArrayList<>(failures));
+        }
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d documents (%d failed), %d local links (%d broken), %d external links, "
+                            + "%d orphans, %.2f s", documents.length, failures.size(), links(), brokenLinks.size(),
+                    externalLinks(), orphans().size(), elapsedNanos / 1e9);
+        }
+    }
+
+    // usage: JemLinkChecker [--threads N] [--orphans] [--top N] <directory>
+    // prints the broken links, with --orphans the orphaned documents and with --top the N documents
+    // with the most inbound links; exits with 1 if there are broken links
+    public static void main(String[] args) throws IOException {
+        JemLinkChecker checker = new JemLinkChecker();
+        boolean orphans = false;
+        int top = 0;
+        String directory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    if (i + 1 == args.length) {
+                        usage();
+                        return;
+                    }
+                    checker.parallelism(Integer.parseInt(args[++i]));
+                    break;
+                case "--orphans":
+                    orphans = true;
+                    break;
+                case "--top":
+                    if (i + 1 == args.length) {
+                        usage();
+                        return;
+                    }
+                    top = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (directory != null) {
+                        usage();
+                        return;
+                    }
+                    directory = args[i];
+            }
+        }
+        if (directory == null) {
+            usage();
+            return;
+        }
+        Result result = checker.check(Paths.get(directory));
+        for (JemBatchConverter.Failure failure : result.failures()) {
+            System.err.println(failure);
+        }
+        for (BrokenLink link : result.brokenLinks()) {
+            System.out.println("broken: " + link);
+        }
+        if (orphans) {
+            for (String orphan : result.orphans()) {
+                System.out.println("orphan: " + orphan);
+            }
+        }
+        if (top > 0) {
+            Integer[] byInbound = new Integer[result.documents()];
+            for (int i = 0; i < byInbound.length; i++) {
+                byInbound[i] = i;
+            }
+            Arrays.sort(byInbound, (a, b) -> Integer.compare(result.inbound(b), result.inbound(a)));
+            for (int i = 0; i < Math.min(top, byInbound.length); i++) {
+                System.out.println("inbound: " + result.inbound(byInbound[i]) + " " + result.path(byInbound[i]));
+            }
+        }
+        System.out.println(result);
+        if (!result.brokenLinks().isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: JemLinkChecker [--threads N] [--orphans] [--top N] <directory>");
+        System.exit(2);
+    }
+}
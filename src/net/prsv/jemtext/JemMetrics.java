@@ -0,0 +1,111 @@
+package net.prsv.jemtext;
+
+// optional instrumentation of the parse and render calls of JemDocument and JemUtf8Document
+//
+// the listener set with setListener() is called after every call with its stats. Without a listener
+// (the default) a call costs one more read of a volatile field; with one, the output is counted by a
+// thin wrapper around it and the stats are allocated per call. See JemMetricsAggregator for a listener
+// that keeps totals and latency histograms.
+public final class JemMetrics {
+
+    public enum Format {
+        HTML,
+        // html() and toc() in a single pass, see JemDocument.page()
+        PAGE,
+        TOC,
+        GEMINI,
+        MARKDOWN
+    }
+
+    static volatile JemMetricsListener listener;
+
+    private JemMetrics() {
+    }
+
+    // NULL turns the instrumentation off
+    public static void setListener(JemMetricsListener listener) {
+        JemMetrics.listener = listener;
+    }
+
+    public static JemMetricsListener listener() {
+        return listener; // may be NULL!
+    }
+
+    public static final class Parse {
+        private final JemTokenStore tokens;
+        private final long input;
+        private final long nanos;
+        private int[] counts;
+
+        Parse(JemTokenStore tokens, long input, long nanos) {
+            this.tokens = tokens;
+            this.input = input;
+            this.nanos = nanos;
+        }
+
+        // the number of lines read, without the trailing empty lines (one token per line)
+        public int lines() {
+            return tokens.size();
+        }
+
+        // the number of tokens of the given type, counted on the first call
+        public int tokens(JemToken.Type type) {
+            if (counts == null) {
+                int[] counts = new int[JemToken.Type.values().length];
+                for (int i = 0; i < tokens.size(); i++) {
+                    counts[tokens.type(i).ordinal()]++;
+                }
+                this.counts = counts;
+            }
+            return counts[type.ordinal()];
+        }
+
+        // the size of the input in chars, or in bytes for a JemUtf8Document
+        public long input() {
+            return input;
+        }
+
+        // the time the parse took, including reading the input for JemDocument.read()
+        public long nanos() {
+            return nanos;
+        }
+    }
+
+    public static final class Render {
+        private final Format format;
+        private final int tokens;
+        private final long output;
+        private final long escaped;
+        private final long nanos;
+
+        Render(Format format, int tokens, long output, long escaped, long nanos) {
+            this.format = format;
+            this.tokens = tokens;
+            this.output = output;
+            this.escaped = escaped;
+            this.nanos = nanos;
+        }
+
+        public Format format() {
+            return format;
+        }
+
+        public int tokens() {
+            return tokens;
+        }
+
+        // the size of the output in chars (both outputs for PAGE), or in bytes for a JemUtf8Document
+        public long output() {
+            return output;
+        }
+
+        // the number of characters JTUtils replaced with an escape sequence or an entity
+        public long escaped() {
+            return escaped;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+    }
+}
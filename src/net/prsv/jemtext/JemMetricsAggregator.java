@@ -0,0 +1,165 @@
+package net.prsv.jemtext;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// a metrics listener that adds up the stats of all calls and keeps latency histograms of the parses and
+// of the renders per format; it can be read at any time while it is collecting
+//
+//   JemMetricsAggregator metrics = new JemMetricsAggregator();
+//   JemMetrics.setListener(metrics);
+//   ...
+//   metrics.snapshot().forEach(gauge::set);
+public class JemMetricsAggregator implements JemMetricsListener {
+
+    private static final JemToken.Type[] TYPES = JemToken.Type.values();
+    private static final JemMetrics.Format[] FORMATS = JemMetrics.Format.values();
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder input = new LongAdder();
+    private final LongAdder[] tokens = adders(TYPES.length);
+    private final JemHistogram parseNanos = new JemHistogram();
+
+    private final LongAdder[] output = adders(FORMATS.length);
+    private final LongAdder[] escaped = adders(FORMATS.length);
+    private final JemHistogram[] renderNanos = new JemHistogram[FORMATS.length];
+
+    public JemMetricsAggregator() {
+        for (int i = 0; i < renderNanos.length; i++) {
+            renderNanos[i] = new JemHistogram();
+        }
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public void parsed(JemMetrics.Parse parse) {
+        lines.add(parse.lines());
+        input.add(parse.input());
+        for (JemToken.Type type : TYPES) {
+            int count = parse.tokens(type);
+            if (count > 0) {
+                tokens[type.ordinal()].add(count);
+            }
+        }
+        parseNanos.record(parse.nanos());
+    }
+
+    @Override
+    public void rendered(JemMetrics.Render render) {
+        int format = render.format().ordinal();
+        output[format].add(render.output());
+        escaped[format].add(render.escaped());
+        renderNanos[format].record(render.nanos());
+    }
+
+    public long parses() {
+        return parseNanos.count();
+    }
+
+    public long lines() {
+        return lines.sum();
+    }
+
+    public long tokens(JemToken.Type type) {
+        return tokens[type.ordinal()].sum();
+    }
+
+    // chars, or bytes for UTF-8 input (see JemMetrics.Parse.input())
+    public long input() {
+        return input.sum();
+    }
+
+    // the parse time in nanoseconds below or at which the given percentage (0 to 100) of the parses are
+    public long parseNanos(double percentile) {
+        return parseNanos.percentile(percentile);
+    }
+
+    public long renders(JemMetrics.Format format) {
+        return renderNanos[format.ordinal()].count();
+    }
+
+    public long output(JemMetrics.Format format) {
+        return output[format.ordinal()].sum();
+    }
+
+    public long escaped(JemMetrics.Format format) {
+        return escaped[format.ordinal()].sum();
+    }
+
+    public long renderNanos(JemMetrics.Format format, double percentile) {
+        return renderNanos[format.ordinal()].percentile(percentile);
+    }
+
+    // all values by name, to be exported to a monitoring system:
+    //   parse.count, parse.lines, parse.input, parse.tokens.<type>, parse.nanos.{sum,max,p50,p90,p99,p99.9}
+    //   render.<format>.count, render.<format>.output, render.<format>.escaped, render.<format>.nanos.*
+    // the names are lower case, e.g. parse.tokens.jt_link or render.html.nanos.p99
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("parse.count", parses());
+        values.put("parse.lines", lines());
+        values.put("parse.input", input());
+        for (JemToken.Type type : TYPES) {
+            values.put("parse.tokens." + type.name().toLowerCase(Locale.ROOT), tokens(type));
+        }
+        putNanos(values, "parse.nanos", parseNanos);
+        for (JemMetrics.Format format : FORMATS) {
+            String prefix = "render." + format.name().toLowerCase(Locale.ROOT);
+            values.put(prefix + ".count", renders(format));
+            values.put(prefix + ".output", output(format));
+            values.put(prefix + ".escaped", escaped(format));
+            putNanos(values, prefix + ".nanos", renderNanos[format.ordinal()]);
+        }
+        return values;
+    }
+
+    private static void putNanos(Map<String, Long> values, String prefix, JemHistogram histogram) {
+        values.put(prefix + ".sum", histogram.sum());
+        values.put(prefix + ".max", histogram.max());
+        for (double percentile : PERCENTILES) {
+            String name = percentile == Math.rint(percentile) ? Long.toString((long) percentile)
+                    : Double.toString(percentile);
+            values.put(prefix + ".p" + name, histogram.percentile(percentile));
+        }
+    }
+
+    // starts over, e.g. after every export
+    public void reset() {
+        lines.reset();
+        input.reset();
+        for (LongAdder adder : tokens) {
+            adder.reset();
+        }
+        parseNanos.reset();
+        for (int i = 0; i < FORMATS.length; i++) {
+            output[i].reset();
+            escaped[i].reset();
+            renderNanos[i].reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format(Locale.ROOT, "parse: %d calls, %d lines, p50 %.3f ms, p99 %.3f ms",
+                parses(), lines(), parseNanos(50) / 1e6, parseNanos(99) / 1e6));
+        for (JemMetrics.Format format : FORMATS) {
+            if (renders(format) > 0) {
+                result.append(String.format(Locale.ROOT, "%n%s: %d calls, %d out, %d escaped, p50 %.3f ms, p99 %.3f ms",
+                        format.name().toLowerCase(Locale.ROOT), renders(format), output(format), escaped(format),
+                        renderNanos(format, 50) / 1e6, renderNanos(format, 99) / 1e6));
+            }
+        }
+        return result.toString();
+    }
+}
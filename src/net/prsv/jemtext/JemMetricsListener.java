@@ -0,0 +1,12 @@
+package net.prsv.jemtext;
+
+// receives the stats of every parse and render, see JemMetrics.setListener()
+// the methods are called on the thread that parsed or rendered, so a listener has to be thread-safe
+public interface JemMetricsListener {
+
+    default void parsed(JemMetrics.Parse parse) {
+    }
+
+    default void rendered(JemMetrics.Render render) {
+    }
+}
@@ -0,0 +1,36 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+
+// wraps the output of a render while a metrics listener is set and counts the chars appended to it
+// (the escaped chars are counted by JemRenderer, which returns them)
+final class JemMetricsOutput implements Appendable {
+
+    private final Appendable output;
+    long length = 0;
+
+    JemMetricsOutput(Appendable output) {
+        this.output = output;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        output.append(csq);
+        length += csq.length();
+        return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        output.append(csq, start, end);
+        length += end - start;
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        output.append(c);
+        length++;
+        return this;
+    }
+}
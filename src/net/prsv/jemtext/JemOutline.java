@@ -0,0 +1,194 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// the title, the headings and the links of a Gemtext document, for index and listing pages that need
+// nothing else
+//
+// the lines are classified like parse() does (the pre and pass-through toggles are followed, so a heading
+// or a link inside a block doesn't count), but only the headings and the links are kept. When reading,
+// the text of every other line is dropped as soon as it is classified.
+// The title, the headings, the links and the TOC are the same as the ones of JemDocument;
+// the title-only scans stop at the title and don't read the rest of the input
+public final class JemOutline {
+
+    private static final JemOutline EMPTY = new JemOutline(new JemTokenStore(""), null);
+
+    private final JemTokenStore tokenStream;
+    private final String title;
+    // indexes into the token stream
+    private final int[] headings;
+    private final int[] links;
+
+    private JemOutline(JemTokenStore tokenStream, String title) {
+        this.tokenStream = tokenStream;
+        this.title = title;
+        int[] headings = new int[tokenStream.size()];
+        int[] links = new int[tokenStream.size()];
+        int headingCount = 0;
+        int linkCount = 0;
+        for (int i = 0; i < tokenStream.size(); i++) {
+            if (tokenStream.type(i) == JemToken.Type.JT_HEADING) {
+                headings[headingCount++] = i;
+            } else {
+                links[linkCount++] = i;
+            }
+        }
+        this.headings = Arrays.copyOf(headings, headingCount);
+        this.links = Arrays.copyOf(links, linkCount);
+    }
+
+    // a NULL input gives an empty outline
+    public static JemOutline scan(String input) {
+        if (input == null) return EMPTY;
+
+        JemTokenStore store = new JemTokenStore(input);
+        JemTokenizer tokenizer = JemTokenizer.outline(store, false);
+        tokenizer.tokenize();
+        store.trimToSize();
+        return new JemOutline(store, tokenizer.title());
+    }
+
+    // the reader is not closed
+    public static JemOutline read(Reader input) throws IOException {
+        if (input == null) return EMPTY;
+
+        StringBuilder text = new StringBuilder();
+        JemTokenStore store = new JemTokenStore(text);
+        JemTokenizer tokenizer = JemTokenizer.outline(store, false);
+        read(input, text, store, tokenizer, false);
+        text.trimToSize();
+        store.trimToSize();
+        return new JemOutline(store, tokenizer.title());
+    }
+
+    // the stream is not closed
+    public static JemOutline read(InputStream input, Charset charset) throws IOException {
+        if (input == null) return EMPTY;
+        return read(new InputStreamReader(input, charset));
+    }
+
+    // reads a UTF-8 encoded Gemtext file
+    public static JemOutline read(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return read(input, StandardCharsets.UTF_8);
+        }
+    }
+
+    // the same as scan(input).title(), but stops at the first level 1 heading
+    // returns NULL if there is no title or the input is NULL
+    public static String scanTitle(String input) {
+        if (input == null) return null;
+
+        JemTokenStore store = new JemTokenStore(input);
+        JemTokenizer tokenizer = JemTokenizer.outline(store, true);
+        tokenizer.tokenize();
+        return tokenizer.title();
+    }
+
+    // the same as read(input).title(), but reads no further than the first level 1 heading
+    // (give or take a buffer); the reader is not closed
+    public static String readTitle(Reader input) throws IOException {
+        if (input == null) return null;
+
+        StringBuilder text = new StringBuilder();
+        JemTokenStore store = new JemTokenStore(text);
+        JemTokenizer tokenizer = JemTokenizer.outline(store, true);
+        read(input, text, store, tokenizer, true);
+        return tokenizer.title();
+    }
+
+    // the stream is not closed
+    public static String readTitle(InputStream input, Charset charset) throws IOException {
+        if (input == null) return null;
+        return readTitle(new InputStreamReader(input, charset));
+    }
+
+    public static String readTitle(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return readTitle(input, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void read(Reader input, StringBuilder text, JemTokenStore store, JemTokenizer tokenizer,
+                             boolean titleOnly) throws IOException {
+        JemLineReader lines = new JemLineReader(input, text);
+        while (lines.readLine()) {
+            int size = store.size();
+            tokenizer.next(lines.lineStart(), lines.lineEnd());
+            if (store.size() == size) {
+                lines.dropLine();
+            } else if (titleOnly && tokenizer.hasTitle()) {
+                return;
+            }
+        }
+    }
+
+    public String title() {
+        return this.title; // may be NULL!
+    }
+
+    // the headings in document order, every heading is materialized on access
+    public List<JemToken.JemHeading> headings() {
+        return new AbstractList<>() {
+            @Override
+            public JemToken.JemHeading get(int index) {
+                return tokenStream.token(headings[index]).heading;
+            }
+
+            @Override
+            public int size() {
+                return headings.length;
+            }
+        };
+    }
+
+    // the links in document order, every link is materialized on access
+    public List<JemToken.JemLink> links() {
+        return new AbstractList<>() {
+            @Override
+            public JemToken.JemLink get(int index) {
+                return tokenStream.token(links[index]).link;
+            }
+
+            @Override
+            public int size() {
+                return links.length;
+            }
+        };
+    }
+
+    // renders TOC as HTML, the same as JemDocument.toc()
+    // returns NULL for the outline of a NULL input
+    public String toc() {
+        if (this == EMPTY) {
+            return null;
+        }
+        StringBuilder output = new StringBuilder();
+        try {
+            toc(output);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    // writes nothing for the outline of a NULL input
+    public void toc(Appendable output) throws IOException {
+        if (this != EMPTY) {
+            JemRenderer.tocList(tokenStream, output);
+        }
+    }
+}
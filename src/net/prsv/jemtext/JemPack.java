@@ -0,0 +1,235 @@
+package net.prsv.jemtext;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// many parsed documents in a single file, to be parsed once and loaded any number of times after
+//
+// the file is memory-mapped and a document is decoded only when asked for, by index or by name
+//   "JEMP", version (1 byte), 3 bytes reserved
+//   the documents, each in the format of JemBinary without its magic, version and length
+//   the index: per document its offset (8 bytes), length (4 bytes) and name (varint length + UTF-8)
+//   offset of the index (8 bytes), number of documents (4 bytes), "JEMP"
+// a pack is immutable and can be read by several threads at the same time; files up to 2 GB
+public final class JemPack {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'J', 'E', 'M', 'P'};
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 16;
+
+    private final ByteBuffer data;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final String[] names;
+    private final Map<String, Integer> indexes;
+
+    private JemPack(ByteBuffer data, long[] offsets, int[] lengths, String[] names) {
+        this.data = data;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.names = names;
+        this.indexes = new HashMap<>(names.length * 2);
+        for (int i = names.length - 1; i >= 0; i--) {
+            indexes.put(names[i], i);
+        }
+    }
+
+    // maps a pack file into memory and reads its index
+    // throws an IOException if the file is not a pack of this version
+    public static JemPack open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // a buffer can't map more, and the writer doesn't write more
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("unsupported JemText pack: larger than 2 GB");
+            }
+            // the mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return read(data);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("corrupt JemText pack", e);
+        }
+    }
+
+    private static JemPack read(ByteBuffer data) throws IOException {
+        if (data.capacity() < HEADER_SIZE + TRAILER_SIZE || !hasMagic(data, 0)
+                || !hasMagic(data, data.capacity() - MAGIC.length)) {
+            throw new IOException("not a JemText pack");
+        }
+        if (data.get(MAGIC.length) != VERSION) {
+            throw new IOException("unsupported JemText pack version " + data.get(MAGIC.length));
+        }
+        long indexOffset = data.getLong(data.capacity() - TRAILER_SIZE);
+        int count = data.getInt(data.capacity() - TRAILER_SIZE + 8);
+        if (indexOffset < HEADER_SIZE || indexOffset > data.capacity() - TRAILER_SIZE || count < 0) {
+            throw new IOException("corrupt JemText pack: bad index");
+        }
+        ByteBuffer index = data.duplicate();
+        index.position((int) indexOffset).limit(data.capacity() - TRAILER_SIZE);
+        long[] offsets = new long[count];
+        int[] lengths = new int[count];
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = index.getLong();
+            lengths[i] = index.getInt();
+            if (offsets[i] < HEADER_SIZE || lengths[i] < 0 || offsets[i] + lengths[i] > indexOffset) {
+                throw new IOException("corrupt JemText pack: bad index");
+            }
+            byte[] name = new byte[JemBinary.readVarint(index)];
+            index.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        return new JemPack(data, offsets, lengths, names);
+    }
+
+    private static boolean hasMagic(ByteBuffer data, int at) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(at + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the number of documents
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    // the index of the (first) document of that name, -1 if there is none
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public List<String> names() {
+        return List.of(names);
+    }
+
+    // decodes a document, every call returns a new document
+    public JemDocument document(int index) throws IOException {
+        ByteBuffer body = data.duplicate();
+        body.position((int) offsets[index]).limit((int) offsets[index] + lengths[index]);
+        return JemBinary.decode(body.slice());
+    }
+
+    // NULL if there is no document of that name
+    public JemDocument document(String name) throws IOException {
+        int index = indexOf(name);
+        return index < 0 ? null : document(index);
+    }
+
+    // creates (or replaces) a pack file; the documents are written as they are added, the index on close()
+    public static Writer create(Path path) throws IOException {
+        return new Writer(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+    }
+
+    public static final class Writer implements Closeable {
+        private final OutputStream output;
+        private final List<String> names = new ArrayList<>();
+        private long[] offsets = new long[64];
+        private int[] lengths = new int[64];
+        private long position;
+        // the size of the index and the trailer written by close()
+        private long indexSize = TRAILER_SIZE;
+        private boolean closed = false;
+
+        private Writer(OutputStream output) throws IOException {
+            this.output = output;
+            byte[] header = Arrays.copyOf(MAGIC, HEADER_SIZE);
+            header[MAGIC.length] = VERSION;
+            write(header, HEADER_SIZE);
+        }
+
+        public void add(String name, JemDocument document) throws IOException {
+            if (closed) {
+                throw new IOException("pack is closed");
+            }
+            JemBinary.Bytes body = new JemBinary.Bytes(document.size() * 4 + 64);
+            JemBinary.encode(document.tokenStream(), body);
+            // the pack must still fit in 2 GB with the index, which is checked before anything is written
+            int nameLength = name.getBytes(StandardCharsets.UTF_8).length;
+            long entrySize = 12 + varintSize(nameLength) + nameLength;
+            if (position + body.size + indexSize + entrySize > Integer.MAX_VALUE) {
+                throw new IOException("pack would be larger than 2 GB");
+            }
+            indexSize += entrySize;
+            int count = names.size();
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            offsets[count] = position;
+            lengths[count] = body.size;
+            names.add(name);
+            write(body.bytes, body.size);
+        }
+
+        // the number of documents added so far
+        public int size() {
+            return names.size();
+        }
+
+        // writes the index and closes the file
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                long indexOffset = position;
+                JemBinary.Bytes index = new JemBinary.Bytes(names.size() * 32 + TRAILER_SIZE);
+                for (int i = 0; i < names.size(); i++) {
+                    index.writeLong(offsets[i]);
+                    index.writeInt(lengths[i]);
+                    byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+                    index.writeVarint(name.length);
+                    index.write(name, 0, name.length);
+                }
+                index.writeLong(indexOffset);
+                index.writeInt(names.size());
+                index.write(MAGIC, 0, MAGIC.length);
+                write(index.bytes, index.size);
+            } finally {
+                output.close();
+            }
+        }
+
+        private static int varintSize(int value) {
+            int size = 1;
+            while ((value >>>= 7) != 0) {
+                size++;
+            }
+            return size;
+        }
+
+        private void write(byte[] bytes, int length) throws IOException {
+            output.write(bytes, 0, length);
+            position += length;
+        }
+    }
+}
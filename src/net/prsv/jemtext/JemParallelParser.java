@@ -0,0 +1,191 @@
+package net.prsv.jemtext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// parses very large documents on a ForkJoinPool
+//
+// the input is split into line-aligned chunks, which are tokenized in parallel by detached tokenizers,
+// i.e. as if every chunk started outside pre and pass-through blocks. The toggles are recognised in
+// every state, so the only thing a chunk does not know is the state it starts in. For each of the four
+// possible start states the chunk works out how many headings survive and where its first level 1
+// heading is. A cheap sequential pass over the chunks then computes the real start states and heading
+// numbers, and the chunks fix up their tokens in parallel, writing straight into the final store.
+class JemParallelParser {
+
+    // below this size the overhead is not worth it
+    static final int MIN_PARALLEL_LENGTH = 1 << 20;
+    private static final int MIN_CHUNK_LENGTH = 1 << 18;
+
+    private static final int PRE = JemTokenizer.PRE;
+    private static final int PASSTHRU = JemTokenizer.PASSTHRU;
+
+    private JemParallelParser() {
+    }
+
+    static JemDocument parse(String input, ForkJoinPool pool) {
+        int end = JemTokenizer.contentEnd(input);
+        if (end < MIN_PARALLEL_LENGTH) {
+            return JemDocument.parse(input);
+        }
+
+        // a few chunks per worker, so that uneven chunks even out
+        int chunkLength = Math.max(MIN_CHUNK_LENGTH, end / (pool.getParallelism() * 4));
+        List<Chunk> chunks = new ArrayList<>();
+        int from = 0;
+        while (from < end) {
+            int to = lineBoundary(input, Math.min(end, from + chunkLength), end);
+            chunks.add(new Chunk(input, from, to));
+            from = to;
+        }
+
+        pool.invoke(new Phase(chunks, false));
+
+        // sequential prefix pass: start state, heading numbers and the offset in the final store of every chunk
+        int state = 0;
+        int headings = 0;
+        int size = 0;
+        for (Chunk chunk : chunks) {
+            chunk.entryState = state;
+            chunk.headingBase = headings;
+            chunk.offset = size;
+            headings += chunk.headings[state];
+            state ^= chunk.toggles;
+            size += chunk.tokens.size();
+        }
+
+        JemTokenStore store = new JemTokenStore(input, size);
+        for (Chunk chunk : chunks) {
+            chunk.target = store;
+        }
+        pool.invoke(new Phase(chunks, true));
+
+        String title = null;
+        for (Chunk chunk : chunks) {
+            int first = chunk.firstTitle[chunk.entryState];
+            if (first >= 0) {
+                title = store.text(chunk.offset + first);
+                break;
+            }
+        }
+        return new JemDocument(store, title);
+    }
+
+    // moves position forward to the start of the next line (but never past end)
+    private static int lineBoundary(CharSequence input, int position, int end) {
+        while (position < end && !JemLineReader.isLineTerminator(input.charAt(position - 1))) {
+            position++;
+        }
+        // don't split a \r\n pair
+        if (position < end && input.charAt(position - 1) == '\r' && input.charAt(position) == '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private static class Chunk {
+        final String input;
+        final int from;
+        final int to;
+
+        JemTokenStore tokens;
+        JemTokenizer tokenizer;
+        // parity of the pre and pass-through toggles in the chunk
+        int toggles = 0;
+        // indexed by start state (PRE | PASSTHRU bits)
+        final int[] headings = new int[4];
+        final int[] firstTitle = {-1, -1, -1, -1};
+
+        int entryState;
+        int headingBase;
+        int offset;
+        JemTokenStore target;
+
+        Chunk(String input, int from, int to) {
+            this.input = input;
+            this.from = from;
+            this.to = to;
+        }
+
+        void tokenize() {
+            tokens = new JemTokenStore(input);
+            tokenizer = new JemTokenizer(tokens, true);
+            tokenizer.tokenize(from, to);
+            // a heading survives only if the state at its line is "outside", i.e. start state == toggles so far
+            for (int i = 0; i < tokens.size(); i++) {
+                switch (tokens.type(i)) {
+                    case JT_PRE_BEGIN:
+                        toggles ^= PRE;
+                        break;
+                    case JT_PASSTHRU_BEGIN:
+                        toggles ^= PASSTHRU;
+                        break;
+                    case JT_HEADING:
+                        headings[toggles]++;
+                        if (tokens.headingLevel(i) == 1 && firstTitle[toggles] < 0) {
+                            firstTitle[toggles] = i;
+                        }
+                        break;
+                }
+            }
+        }
+
+        void fixUp() {
+            int state = entryState;
+            int headingCount = headingBase;
+            for (int i = 0; i < tokens.size(); i++) {
+                int index = offset + i;
+                JemToken.Type type = tokens.type(i);
+                if (type == JemToken.Type.JT_PRE_BEGIN) {
+                    state ^= PRE;
+                    if ((state & PRE) != 0)
+                        target.set(index, type, tokens.start(i), tokens.end(i), -1, -1);
+                    else
+                        target.set(index, JemToken.Type.JT_PRE_END, -1, -1, -1, -1);
+                } else if (type == JemToken.Type.JT_PASSTHRU_BEGIN) {
+                    state ^= PASSTHRU;
+                    target.set(index, (state & PASSTHRU) != 0 ? type : JemToken.Type.JT_PASSTHRU_END,
+                            -1, -1, -1, -1);
+                } else if ((state & PRE) != 0) {
+                    target.set(index, JemToken.Type.JT_PRE_TEXT,
+                            tokenizer.lineStart(i), tokenizer.lineEnd(i), -1, -1);
+                } else if ((state & PASSTHRU) != 0) {
+                    target.set(index, JemToken.Type.JT_PASSTHRU_TEXT,
+                            tokenizer.lineStart(i), tokenizer.lineEnd(i), -1, -1);
+                } else if (type == JemToken.Type.JT_HEADING) {
+                    headingCount++;
+                    target.set(index, type, tokens.start(i), tokens.end(i), tokens.aux1(i), headingCount);
+                } else {
+                    target.set(index, type, tokens.start(i), tokens.end(i), tokens.aux1(i), tokens.aux2(i));
+                }
+            }
+            // the chunk is done, let the temporary tokens go
+            tokens = null;
+            tokenizer = null;
+        }
+    }
+
+    private static class Phase extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final boolean fixUp;
+
+        Phase(List<Chunk> chunks, boolean fixUp) {
+            this.chunks = chunks;
+            this.fixUp = fixUp;
+        }
+
+        @Override
+        protected void compute() {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                tasks.add(ForkJoinTask.adapt(fixUp ? chunk::fixUp : chunk::tokenize));
+            }
+            invokeAll(tasks);
+        }
+    }
+}
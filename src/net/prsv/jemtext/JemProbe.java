@@ -0,0 +1,130 @@
+package net.prsv.jemtext;
+
+// measures a single parse or render for the metrics listener (see JemMetrics) and the flight recorder
+// (see JemEvents); parse() and render() return NULL if neither is on, which is the usual case:
+//
+//   JemProbe probe = JemProbe.render(JemMetrics.Format.HTML, output, ...);
+//   long escaped = JemRenderer.html(tokens, probe == null ? output : probe.output(), ...);
+//   if (probe != null) probe.rendered(tokens, escaped);
+//
+// without a listener and with the events off, a probe costs a volatile read and two flag checks
+final class JemProbe {
+
+    // only asked whether their event type is enabled, which doesn't depend on the instance
+    private static final JemEvents.Parse PARSE = new JemEvents.Parse();
+    private static final JemEvents.Render RENDER = new JemEvents.Render();
+
+    private final JemMetricsListener metrics;
+    private final JemEvents.Parse parseEvent;
+    private final JemEvents.Render renderEvent;
+    private final JemMetrics.Format format;
+    private final JemMetricsOutput output;
+    private final long started;
+
+    private JemProbe(JemMetricsListener metrics, JemEvents.Parse parseEvent, JemEvents.Render renderEvent,
+                     JemMetrics.Format format, JemMetricsOutput output) {
+        this.metrics = metrics;
+        this.parseEvent = parseEvent;
+        this.renderEvent = renderEvent;
+        this.format = format;
+        this.output = output;
+        if (parseEvent != null) {
+            parseEvent.begin();
+        }
+        if (renderEvent != null) {
+            renderEvent.begin();
+        }
+        this.started = System.nanoTime();
+    }
+
+    // mode is one of the modes of JemEvents.Parse
+    static JemProbe parse(String mode) {
+        JemMetricsListener metrics = JemMetrics.listener;
+        boolean enabled = PARSE.isEnabled();
+        if (metrics == null && !enabled) {
+            return null;
+        }
+        JemEvents.Parse event = null;
+        if (enabled) {
+            event = new JemEvents.Parse();
+            event.mode = mode;
+        }
+        return new JemProbe(metrics, event, null, null, null);
+    }
+
+    // the flags are recorded as given, they are all false for the formats that have none
+    static JemProbe render(JemMetrics.Format format, Appendable output, boolean strict, boolean expandImages,
+                           boolean linkImages) {
+        JemMetricsListener metrics = JemMetrics.listener;
+        boolean enabled = RENDER.isEnabled();
+        if (metrics == null && !enabled) {
+            return null;
+        }
+        JemEvents.Render event = null;
+        if (enabled) {
+            event = new JemEvents.Render();
+            event.format = format.name();
+            event.strict = strict;
+            event.expandImages = expandImages;
+            event.linkImages = linkImages;
+        }
+        return new JemProbe(metrics, null, event, format, new JemMetricsOutput(output));
+    }
+
+    // the output to render into, which counts the output
+    JemMetricsOutput output() {
+        return output;
+    }
+
+    // a second output of the same render (the TOC of a page)
+    JemMetricsOutput output(Appendable second) {
+        return new JemMetricsOutput(second);
+    }
+
+    void parsed(JemTokenStore tokens, long inputLength) {
+        long nanos = System.nanoTime() - started;
+        if (metrics != null) {
+            metrics.parsed(new JemMetrics.Parse(tokens, inputLength, nanos));
+        }
+        if (parseEvent != null) {
+            parseEvent.end();
+            if (parseEvent.shouldCommit()) {
+                parseEvent.inputLength = inputLength;
+                parseEvent.tokens = tokens.size();
+                for (int i = 0; i < tokens.size(); i++) {
+                    switch (tokens.type(i)) {
+                        case JT_HEADING:
+                            parseEvent.headings++;
+                            break;
+                        case JT_LINK:
+                            parseEvent.links++;
+                            break;
+                    }
+                }
+                parseEvent.commit();
+            }
+        }
+    }
+
+    // escaped is the number of characters the renderer escaped (see JemRenderer)
+    // the output length is the length counted by output(), unless given (e.g. bytes for UTF-8 output)
+    void rendered(JemTokenStore tokens, long escaped) {
+        rendered(tokens, output.length, escaped);
+    }
+
+    void rendered(JemTokenStore tokens, long outputLength, long escaped) {
+        long nanos = System.nanoTime() - started;
+        if (metrics != null) {
+            metrics.rendered(new JemMetrics.Render(format, tokens.size(), outputLength, escaped, nanos));
+        }
+        if (renderEvent != null) {
+            renderEvent.end();
+            if (renderEvent.shouldCommit()) {
+                renderEvent.tokens = tokens.size();
+                renderEvent.outputLength = outputLength;
+                renderEvent.escaped = escaped;
+                renderEvent.commit();
+            }
+        }
+    }
+}
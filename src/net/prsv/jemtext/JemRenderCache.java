@@ -0,0 +1,291 @@
+package net.prsv.jemtext;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// a bounded cache of rendered output, keyed by a hash of the Gemtext source and the render options
+//
+// the cache is split into independently locked segments, each an LRU list with its share of the byte bound,
+// so concurrent lookups of different pages do not contend on a single lock. A cache gets up to 16 segments,
+// but no segment is smaller than 1 MB unless the whole cache is, since an entry has to fit in the share of
+// its segment: an output larger than that is not cached and is counted by rejected().
+// The key is a 128-bit hash of the source (two independent 64-bit hashes) plus its length and the render
+// options. The source is kept with its entry and compared on a hit, so that a source made to collide with
+// another one never gets its output; it counts towards the size of the entry.
+// Rendering on a miss happens outside the lock; two threads missing the same page may both render it.
+public class JemRenderCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final long MIN_SEGMENT_BYTES = 1 << 20;
+    // rough size of an entry besides the source and the output: key, entry and map node
+    private static final int ENTRY_OVERHEAD = 96;
+    // stands for a render that returned null (an empty document), which the map can't hold
+    private static final String NO_OUTPUT = new String();
+
+    private static final int HTML = 0;
+    private static final int MARKDOWN = 1;
+    private static final int GEMINI = 2;
+    private static final int TOC = 3;
+
+    private final Segment[] segments;
+    private final long maxBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    // maxBytes is the bound of the estimated memory used by the cached output (two bytes per char)
+    public JemRenderCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        int count = 1;
+        while (count < MAX_SEGMENTS && maxBytes / (count * 2) >= MIN_SEGMENT_BYTES) {
+            count *= 2;
+        }
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxBytes / count);
+        }
+    }
+
+    // the same as JemDocument.parse(source).html(strict, expandImages, linkImages)
+    public String html(String source, boolean strict, boolean expandImages, boolean linkImages) {
+        int options = HTML | (strict ? 4 : 0) | (expandImages ? 8 : 0) | (linkImages ? 16 : 0);
+        return get(source, options);
+    }
+
+    public String html(String source) {
+        return html(source, false, true, true);
+    }
+
+    public String markdown(String source, boolean expandImages) {
+        return get(source, MARKDOWN | (expandImages ? 8 : 0));
+    }
+
+    public String markdown(String source) {
+        return markdown(source, true);
+    }
+
+    public String gemini(String source) {
+        return get(source, GEMINI);
+    }
+
+    public String toc(String source) {
+        return get(source, TOC);
+    }
+
+    private String get(String source, int options) {
+        if (source == null) {
+            return null;
+        }
+        Key key = new Key(source, options);
+        Segment segment = segments[(int) (key.hash1 >>> 32) & (segments.length - 1)];
+        String output = segment.get(key);
+        if (output != null) {
+            hits.increment();
+            return output == NO_OUTPUT ? null : output;
+        }
+        misses.increment();
+        output = render(source, options);
+        int evicted = segment.put(key, output == null ? NO_OUTPUT : output);
+        if (evicted < 0) {
+            rejected.increment();
+        } else {
+            evictions.add(evicted);
+        }
+        return output;
+    }
+
+    private static String render(String source, int options) {
+        JemDocument document = JemDocument.parse(source);
+        switch (options & 3) {
+            case HTML:
+                return document.html((options & 4) != 0, (options & 8) != 0, (options & 16) != 0);
+            case MARKDOWN:
+                return document.markdown((options & 8) != 0);
+            case GEMINI:
+                return document.gemini();
+            default:
+                return document.toc();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // the outputs that were too large to be cached, see maxEntryBytes()
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    // the estimated size of the largest entry the cache takes (source and output at two bytes per char)
+    public long maxEntryBytes() {
+        return segments[0].maxBytes;
+    }
+
+    // estimated bytes held by the cache
+    public long bytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public int entries() {
+        int entries = 0;
+        for (Segment segment : segments) {
+            entries += segment.entries();
+        }
+        return entries;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "JemRenderCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d, "
+                + "rejected=%d]", entries(), bytes(), maxBytes, hits(), misses(), evictions(), rejected());
+    }
+
+    private static final class Key {
+        final String source;
+        final long hash1;
+        final long hash2;
+        final int length;
+        final int options;
+
+        Key(String source, int options) {
+            JemHash hash = new JemHash().add(source, 0, source.length());
+            this.source = source;
+            this.hash1 = hash.high();
+            this.hash2 = hash.low();
+            this.length = source.length();
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash1 == other.hash1 && hash2 == other.hash2 && length == other.length && options == other.options
+                    && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash1 ^ options;
+        }
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        // access-ordered, so the eldest entry is the least recently used one
+        private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private long bytes = 0;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        String get(Key key) {
+            lock.lock();
+            try {
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // returns the number of evicted entries, or -1 if the entry is too large to be cached
+        int put(Key key, String output) {
+            long size = sizeOf(key, output);
+            if (size > maxBytes) {
+                // would evict everything else and still not fit
+                return -1;
+            }
+            lock.lock();
+            try {
+                String previous = entries.put(key, output);
+                if (previous != null) {
+                    // the map keeps the key it had, which holds an equal source
+                    bytes -= sizeOf(key, previous);
+                }
+                bytes += size;
+                int evicted = 0;
+                Iterator<Map.Entry<Key, String>> eldest = entries.entrySet().iterator();
+                while (bytes > maxBytes && eldest.hasNext()) {
+                    Map.Entry<Key, String> entry = eldest.next();
+                    if (entry.getKey() == key) {
+                        continue;
+                    }
+                    bytes -= sizeOf(entry.getKey(), entry.getValue());
+                    eldest.remove();
+                    evicted++;
+                }
+                return evicted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long bytes() {
+            lock.lock();
+            try {
+                return bytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int entries() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+                bytes = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static long sizeOf(Key key, String output) {
+            return ENTRY_OVERHEAD + 2L * (key.length + output.length());
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+
+// renders a token stream straight into an Appendable, so that the output is never held twice
+// all methods write nothing if the token stream is empty; the ones that escape text return the number
+// of characters they escaped (see JemMetrics)
+class JemRenderer {
+
+    private JemRenderer() {
+    }
+
+    // renders the token stream as HTML
+    static long html(JemTokenStore tokens, Appendable output, boolean strict, boolean expandImages,
+                     boolean linkImages) throws IOException {
+        return html(tokens, 0, tokens.size(), output, null, strict, expandImages, linkImages);
+    }
+
+    // renders the token stream as HTML and the TOC in the same pass, the heading text is escaped and
+    // the heading IDs are created once for both; the TOC is the same as toc() writes
+    static long page(JemTokenStore tokens, Appendable output, Appendable toc, boolean strict, boolean expandImages,
+                     boolean linkImages) throws IOException {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        toc.append("<ul class=\"jt-toc-list\">\n");
+        long escaped = html(tokens, 0, tokens.size(), output, toc, strict, expandImages, linkImages);
+        toc.append("</ul>");
+        return escaped;
+    }
+
+    // renders the tokens [from, to) as HTML
+    // a list is opened and closed by looking at the tokens around each item, so a range should not
+    // start or end in the middle of a list (see JemBlockRenderer)
+    // TOC items are written into toc, unless it is NULL
+    // the escapes of a heading are counted once, although its text goes into the TOC as well
+    static long html(JemTokenStore tokens, int from, int to, Appendable output, Appendable toc, boolean strict,
+                     boolean expandImages, boolean linkImages) throws IOException {
+        CharSequence source = tokens.source();
+        long escaped = 0;
+        // the heading ID and the escaped heading text, when they go into the TOC as well
+        StringBuilder heading = null;
+        for (int i = from; i < to; i++) {
+            switch(tokens.type(i)) {
+                case JT_PRE_BEGIN:
+                    if (!tokens.isEmptyText(i)) {
+                        output.append("<!-- ");
+                        output.append(source, tokens.start(i), tokens.end(i));
+                        output.append(" -->\n");
+                    }
+                    output.append("<pre>\n");
+                    break;
+                case JT_PRE_END:
+                    output.append("</pre>\n");
+                    break;
+                case JT_PASSTHRU_BEGIN:
+                    if (!strict)
+                        output.append("<!-- begin HTML pass-through -->\n");
+                    break;
+                case JT_PASSTHRU_END:
+                    if (!strict)
+                        output.append("<!-- end HTML pass-through -->\n");
+                    break;
+                case JT_HR:
+                    if (!strict)
+                        output.append("<hr />\n");
+                    break;
+                case JT_LINK:
+                    if(expandImages && isImage(source, tokens.start(i), tokens.end(i))) {
+                        if(linkImages) {
+                            output.append("<a href=\"");
+                            escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                            output.append("\">\n");
+                        }
+                        output.append("<img class=\"jt-image\" src=\"");
+                        escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                        output.append("\" alt=\"");
+                        escaped += JTUtils.htmlEncode(source, tokens.altStart(i), tokens.altEnd(i), output);
+                        output.append("\" title=\"");
+                        escaped += JTUtils.htmlEncode(source, tokens.altStart(i), tokens.altEnd(i), output);
+                        output.append("\" />\n");
+                        if(linkImages) {
+                            output.append("</a>\n");
+                        }
+                    } else {
+                        output.append("<a class=\"jt-link\" href=\"");
+                        escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                        output.append("\">");
+                        escaped += JTUtils.htmlEncode(source, tokens.altStart(i), tokens.altEnd(i), output);
+                        output.append("</a>\n");
+                    }
+                    break;
+                case JT_HEADING:
+                    char level = (char) ('0' + tokens.headingLevel(i));
+                    output.append("<h").append(level).append(" id=\"");
+                    if (toc == null) {
+                        appendHeadingID(output, tokens.headingCount(i));
+                        output.append("\">");
+                        escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                    } else {
+                        if (heading == null) {
+                            heading = new StringBuilder();
+                        }
+                        heading.setLength(0);
+                        appendHeadingID(heading, tokens.headingCount(i));
+                        int idEnd = heading.length();
+                        escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), heading);
+                        output.append(heading, 0, idEnd);
+                        output.append("\">");
+                        output.append(heading, idEnd, heading.length());
+                        appendTocItem(toc, level, heading, idEnd);
+                    }
+                    output.append("</h").append(level).append(">\n");
+                    break;
+                case JT_LIST_ITEM:
+                    // if the previous token is not JT_LIST_ITEM, open the unordered list
+                    if (!isListItem(tokens, previousListIndex(tokens, i))) {
+                        output.append("<ul>\n");
+                    }
+                    output.append("<li>");
+                    escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                    output.append("</li>\n");
+                    // if the next token is not JT_LIST_ITEM, close the unordered list
+                    if (!isListItem(tokens, nextListIndex(tokens, i))) {
+                        output.append("</ul>\n");
+                    }
+                    break;
+                case JT_BLOCKQUOTE:
+                    output.append("<blockquote>");
+                    escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                    output.append("</blockquote>\n");
+                    break;
+                case JT_PASSTHRU_TEXT:
+                    if (!strict) {
+                        output.append(source, tokens.start(i), tokens.end(i));
+                        output.append('\n');
+                    }
+                    break;
+                case JT_PRE_TEXT:
+                    escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                    output.append('\n');
+                    break;
+                default:
+                    if (!tokens.isBlankText(i)) {
+                        output.append("<p>");
+                        escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                        output.append("</p>\n");
+                    }
+            }
+        }
+        return escaped;
+    }
+
+    // a single empty line between two list items does not break the list
+    // these return the index of the token that decides whether a list is opened or closed
+    static int previousListIndex(JemTokenStore tokens, int i) {
+        int previous = i - 1;
+        if (previous >= 0 && tokens.type(previous) == JemToken.Type.JT_TEXT && tokens.isEmptyText(previous)) {
+            previous = i - 2;
+        }
+        return previous;
+    }
+
+    static int nextListIndex(JemTokenStore tokens, int i) {
+        int next = i + 1;
+        if (next < tokens.size() && tokens.type(next) == JemToken.Type.JT_TEXT && tokens.isEmptyText(next)) {
+            next = i + 2;
+        }
+        return next;
+    }
+
+    static boolean isListItem(JemTokenStore tokens, int i) {
+        return i >= 0 && i < tokens.size() && tokens.type(i) == JemToken.Type.JT_LIST_ITEM;
+    }
+
+    // renders TOC as HTML
+    static long toc(JemTokenStore tokens, Appendable output) throws IOException {
+        if(tokens.isEmpty()) {
+            return 0;
+        }
+        return tocList(tokens, output);
+    }
+
+    // the TOC list, even if there are no headings
+    static long tocList(JemTokenStore tokens, Appendable output) throws IOException {
+        CharSequence source = tokens.source();
+        long escaped = 0;
+        output.append("<ul class=\"jt-toc-list\">\n");
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) == JemToken.Type.JT_HEADING) {
+                output.append("<li class=\"jt-toc-depth-").append((char) ('0' + tokens.headingLevel(i)));
+                output.append("\"><a href=\"#");
+                appendHeadingID(output, tokens.headingCount(i));
+                output.append("\">");
+                escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                output.append("</a></li>\n");
+            }
+        }
+        output.append("</ul>");
+        return escaped;
+    }
+
+    // renders the token stream as valid (strict) Gemtext
+    static void gemini(JemTokenStore tokens, Appendable output) throws IOException {
+        CharSequence source = tokens.source();
+        for (int i = 0; i < tokens.size(); i++) {
+            switch(tokens.type(i)) {
+                case JT_PRE_BEGIN:
+                    output.append("```");
+                    if (!tokens.isEmptyText(i))
+                        output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_PRE_END:
+                    output.append("```\n");
+                    break;
+                case JT_LINK:
+                    output.append("=> ");
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    if (tokens.hasAltText(i) && !regionEquals(source, tokens.start(i), tokens.end(i),
+                            tokens.altStart(i), tokens.altEnd(i))) {
+                        output.append(" ");
+                        output.append(source, tokens.altStart(i), tokens.altEnd(i));
+                    }
+                    output.append('\n');
+                    break;
+                case JT_BLOCKQUOTE:
+                    output.append("> ");
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_LIST_ITEM:
+                    output.append("* ");
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_HEADING:
+                    for (int level = 0; level < tokens.headingLevel(i); level++) {
+                        output.append('#');
+                    }
+                    output.append(" ");
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_TEXT:
+                case JT_PRE_TEXT:
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                // pass-through text and horizontal rules are not valid Gemtext
+            }
+        }
+    }
+
+    // renders the token stream as a Markdown document
+    static long markdown(JemTokenStore tokens, Appendable output, boolean expandImages) throws IOException {
+        CharSequence source = tokens.source();
+        long escaped = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            switch(tokens.type(i)) {
+                case JT_PRE_BEGIN:
+                    output.append("```");
+                    if (!tokens.isEmptyText(i))
+                        output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_PRE_END:
+                    output.append("```\n");
+                    break;
+                case JT_LINK:
+                    if(expandImages && isImage(source, tokens.start(i), tokens.end(i))) {
+                        output.append('!');
+                    }
+                    output.append('[');
+                    output.append(source, tokens.altStart(i), tokens.altEnd(i));
+                    output.append("](");
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append(")\n\n");
+                    break;
+                case JT_BLOCKQUOTE:
+                    output.append("> ");
+                    escaped += JTUtils.htmlEncode(source, tokens.start(i), tokens.end(i), output);
+                    output.append('\n');
+                    break;
+                case JT_LIST_ITEM:
+                    output.append("* ");
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_HEADING:
+                    for (int level = 0; level < tokens.headingLevel(i); level++) {
+                        output.append('#');
+                    }
+                    output.append(" ");
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_TEXT:
+                    escaped += JTUtils.mdEncode(source, tokens.start(i), tokens.end(i), output);
+                    output.append('\n');
+                    break;
+                case JT_PRE_TEXT:
+                    // backticks are doubled
+                    int last = tokens.start(i);
+                    for (int c = tokens.start(i); c < tokens.end(i); c++) {
+                        if (source.charAt(c) == '`') {
+                            output.append(source, last, c + 1);
+                            last = c;
+                        }
+                    }
+                    output.append(source, last, tokens.end(i));
+                    output.append('\n');
+                    break;
+                case JT_PASSTHRU_TEXT:
+                    output.append(source, tokens.start(i), tokens.end(i));
+                    output.append('\n');
+                    // pass-through text is followed by a rule, as it always has been
+                    output.append("---\n\n");
+                    break;
+                case JT_HR:
+                    output.append("---\n\n");
+            }
+        }
+        return escaped;
+    }
+
+    // the same as matching the URL against ^\S*\.(?i)(gif|jpeg|jpg|jfif|png)$, without creating the URL
+    static boolean isImage(CharSequence source, int start, int end) {
+        // $ also matches before a line terminator at the very end (not that a URL from the tokenizer has one)
+        if (end - start >= 2 && source.charAt(end - 2) == '\r' && source.charAt(end - 1) == '\n') {
+            end -= 2;
+        } else if (end > start && isRegexLineTerminator(source.charAt(end - 1))) {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            if (JemTokenizer.isSpace(source.charAt(i))) {
+                return false;
+            }
+        }
+        return endsWithIgnoreCase(source, start, end, ".gif") || endsWithIgnoreCase(source, start, end, ".jpeg")
+                || endsWithIgnoreCase(source, start, end, ".jpg") || endsWithIgnoreCase(source, start, end, ".jfif")
+                || endsWithIgnoreCase(source, start, end, ".png");
+    }
+
+    private static boolean isRegexLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    static boolean isImage(String url) {
+        return isImage(url, 0, url.length());
+    }
+
+    // suffix is lower case ASCII, and only ASCII letters are matched case-insensitively, like (?i) does
+    private static boolean endsWithIgnoreCase(CharSequence source, int start, int end, String suffix) {
+        if (end - start < suffix.length()) {
+            return false;
+        }
+        int offset = end - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            char c = source.charAt(offset + i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            if (c != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(CharSequence source, int start, int end, int otherStart, int otherEnd) {
+        if (end - start != otherEnd - otherStart) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i++) {
+            if (source.charAt(start + i) != source.charAt(otherStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // appends a heading ID, jt-heading- and the heading number in hex
+    static void appendHeadingID(Appendable output, int headingCount) throws IOException {
+        output.append("jt-heading-");
+        int shift = Math.max(0, (31 - Integer.numberOfLeadingZeros(headingCount)) & ~3);
+        for (; shift >= 0; shift -= 4) {
+            output.append(HEX_DIGITS[(headingCount >>> shift) & 0xF]);
+        }
+    }
+
+    // appends a TOC element, heading holds the heading ID up to idEnd and the escaped heading text after it
+    private static void appendTocItem(Appendable output, char level, CharSequence heading, int idEnd)
+            throws IOException {
+        output.append("<li class=\"jt-toc-depth-").append(level).append("\"><a href=\"#");
+        output.append(heading, 0, idEnd);
+        output.append("\">");
+        output.append(heading, idEnd, heading.length());
+        output.append("</a></li>\n");
+    }
+}
@@ -0,0 +1,479 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// a full-text index of many documents, built by JemIndexer
+//
+// a term is a run of letters and digits, lower-cased; every document that contains a term has a posting
+// with its score (the number of times the term occurs, a heading counting more) and the headings of the
+// sections the term occurs in (a heading number, see JemRenderer.appendHeadingID, 0 before the first heading).
+// The index is a single file that is searched where it lies, memory-mapped or in a byte array:
+//   "JEMS", version (1 byte), 3 bytes reserved
+//   the document names (UTF-8), then per document its name offset and length (4 + 4 bytes)
+//   the terms (UTF-8, sorted by their bytes), then the postings
+//   per term its offset and length (4 + 4 bytes), document frequency (4 bytes),
+//   postings offset and length (4 + 4 bytes)
+//   the postings of a term, in document order: varint document delta, varint score, varint number of
+//   sections, varint section deltas
+//   offset of the name table, number of documents, offset of the term table, number of terms (4 bytes each),
+//   "JEMS"
+// an index is immutable and can be searched by several threads at the same time; files up to 2 GB
+public final class JemSearchIndex {
+
+    public static final int VERSION = 1;
+
+    static final byte[] MAGIC = {'J', 'E', 'M', 'S'};
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 20;
+    static final int TERM_ENTRY_SIZE = 20;
+    // longer runs of letters and digits are not indexed
+    static final int MAX_TERM_LENGTH = 64;
+
+    private final ByteBuffer data;
+    private final int nameTable;
+    private final int documents;
+    private final int termTable;
+    private final int terms;
+
+    private JemSearchIndex(ByteBuffer data, int nameTable, int documents, int termTable, int terms) {
+        this.data = data;
+        this.nameTable = nameTable;
+        this.documents = documents;
+        this.termTable = termTable;
+        this.terms = terms;
+    }
+
+    // maps an index file into memory
+    // throws an IOException if the file is not an index of this version
+    public static JemSearchIndex open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return read(data);
+    }
+
+    // an index in the format of the file
+    static JemSearchIndex read(ByteBuffer data) throws IOException {
+        int capacity = data.capacity();
+        if (capacity < HEADER_SIZE + TRAILER_SIZE || !hasMagic(data, 0) || !hasMagic(data, capacity - MAGIC.length)) {
+            throw new IOException("not a JemText search index");
+        }
+        if (data.get(MAGIC.length) != VERSION) {
+            throw new IOException("unsupported JemText search index version " + data.get(MAGIC.length));
+        }
+        int trailer = capacity - TRAILER_SIZE;
+        int nameTable = data.getInt(trailer);
+        int documents = data.getInt(trailer + 4);
+        int termTable = data.getInt(trailer + 8);
+        int terms = data.getInt(trailer + 12);
+        if (nameTable < HEADER_SIZE || documents < 0 || (long) nameTable + documents * 8L > termTable
+                || terms < 0 || (long) termTable + terms * (long) TERM_ENTRY_SIZE != trailer) {
+            throw new IOException("corrupt JemText search index: bad tables");
+        }
+        return new JemSearchIndex(data, nameTable, documents, termTable, terms);
+    }
+
+    private static boolean hasMagic(ByteBuffer data, int at) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(at + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // writes the index to a file that open() can map
+    public void write(Path path) throws IOException {
+        try (OutputStream output = Files.newOutputStream(path)) {
+            write(output);
+        }
+    }
+
+    // the stream is not closed
+    public void write(OutputStream output) throws IOException {
+        ByteBuffer bytes = data.duplicate();
+        bytes.clear();
+        if (bytes.hasArray()) {
+            output.write(bytes.array(), bytes.arrayOffset(), bytes.capacity());
+            return;
+        }
+        byte[] chunk = new byte[1 << 16];
+        while (bytes.hasRemaining()) {
+            int length = Math.min(chunk.length, bytes.remaining());
+            bytes.get(chunk, 0, length);
+            output.write(chunk, 0, length);
+        }
+    }
+
+    // the number of documents
+    public int documents() {
+        return documents;
+    }
+
+    // the name a document was indexed under
+    public String name(int document) {
+        if (document < 0 || document >= documents) {
+            throw new IndexOutOfBoundsException(document);
+        }
+        int entry = nameTable + document * 8;
+        return string(data.getInt(entry), data.getInt(entry + 4));
+    }
+
+    // the number of distinct terms
+    public int terms() {
+        return terms;
+    }
+
+    // the number of documents that contain a term (as it is indexed: lower case, letters and digits)
+    public int documentFrequency(String term) {
+        int entry = find(term.getBytes(StandardCharsets.UTF_8));
+        return entry < 0 ? 0 : data.getInt(entry + 8);
+    }
+
+    // the documents that contain all the terms of the query, the best first (by their score, then in the order
+    // they were indexed), at most limit of them
+    public List<Hit> search(String query, int limit) throws IOException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        Set<String> distinct = new LinkedHashSet<>();
+        scanTerms(query, 0, query.length(), new StringBuilder(), distinct::add);
+        if (distinct.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] entries = new int[distinct.size()];
+        int count = 0;
+        for (String term : distinct) {
+            int entry = find(term.getBytes(StandardCharsets.UTF_8));
+            if (entry < 0) {
+                return Collections.emptyList();
+            }
+            entries[count++] = entry;
+        }
+        // the rarest term first, so that the candidates only get fewer
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = entries[i];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(data.getInt(a + 8), data.getInt(b + 8)));
+
+        try {
+            Postings candidates = null;
+            for (int entry : order) {
+                Postings postings = postings(entry);
+                candidates = candidates == null ? postings : candidates.intersect(postings);
+                if (candidates.size == 0) {
+                    return Collections.emptyList();
+                }
+            }
+            return candidates.top(limit);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("corrupt JemText search index: bad postings", e);
+        }
+    }
+
+    // the position of the table entry of a term, -1 if there is no such term
+    private int find(byte[] term) {
+        int low = 0;
+        int high = terms - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = termTable + middle * TERM_ENTRY_SIZE;
+            int comparison = compare(data.getInt(entry), data.getInt(entry + 4), term);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // compares the bytes of the index at [offset, offset + length) to a term, unsigned
+    private int compare(int offset, int length, byte[] term) {
+        int common = Math.min(length, term.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (data.get(offset + i) & 0xFF) - (term[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - term.length;
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = data.duplicate();
+        source.clear().position(offset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Postings postings(int entry) throws IOException {
+        int frequency = data.getInt(entry + 8);
+        ByteBuffer input = data.duplicate();
+        input.clear().position(data.getInt(entry + 12)).limit(data.getInt(entry + 12) + data.getInt(entry + 16));
+        Postings postings = new Postings(frequency, 1);
+        int document = -1;
+        for (int i = 0; i < frequency; i++) {
+            document += JemBinary.readVarint(input);
+            int score = JemBinary.readVarint(input);
+            // the sections are decoded for the hits only
+            int sections = input.position();
+            for (int k = JemBinary.readVarint(input); k > 0; k--) {
+                JemBinary.readVarint(input);
+            }
+            postings.documents[i] = document;
+            postings.scores[i] = score;
+            postings.sections[i] = sections;
+        }
+        if (document >= documents) {
+            throw new IOException("corrupt JemText search index: bad document " + document);
+        }
+        postings.size = frequency;
+        return postings;
+    }
+
+    private int[] sections(int position) throws IOException {
+        ByteBuffer input = data.duplicate();
+        input.clear().position(position);
+        int[] sections = new int[JemBinary.readVarint(input)];
+        int section = 0;
+        for (int k = 0; k < sections.length; k++) {
+            sections[k] = section += JemBinary.readVarint(input);
+        }
+        return sections;
+    }
+
+    // the documents (in order) of one or more terms together, with their summed scores and where the
+    // sections of every term are in the postings
+    private final class Postings {
+        final int terms;
+        int size = 0;
+        final int[] documents;
+        final int[] scores;
+        // per document and term, where the sections of the term are in the data
+        final int[] sections;
+
+        Postings(int capacity, int terms) {
+            this.terms = terms;
+            documents = new int[capacity];
+            scores = new int[capacity];
+            sections = new int[capacity * terms];
+        }
+
+        Postings intersect(Postings other) {
+            Postings result = new Postings(Math.min(size, other.size), terms + other.terms);
+            int i = 0;
+            int k = 0;
+            while (i < size && k < other.size) {
+                if (documents[i] < other.documents[k]) {
+                    i++;
+                } else if (documents[i] > other.documents[k]) {
+                    k++;
+                } else {
+                    int at = result.size++;
+                    result.documents[at] = documents[i];
+                    result.scores[at] = scores[i] + other.scores[k];
+                    System.arraycopy(sections, i * terms, result.sections, at * result.terms, terms);
+                    System.arraycopy(other.sections, k * other.terms, result.sections, at * result.terms + terms,
+                            other.terms);
+                    i++;
+                    k++;
+                }
+            }
+            return result;
+        }
+
+        List<Hit> top(int limit) throws IOException {
+            // the highest score first, then the lowest document
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (long) (Integer.MAX_VALUE - scores[i]) << 32 | i;
+            }
+            Arrays.sort(order);
+            List<Hit> hits = new ArrayList<>(Math.min(limit, size));
+            for (int i = 0; i < Math.min(limit, size); i++) {
+                int at = (int) order[i];
+                int[] common = sections(sections[at * terms]);
+                int[] all = common;
+                for (int term = 1; term < terms; term++) {
+                    int[] other = sections(sections[at * terms + term]);
+                    common = intersection(common, other);
+                    all = union(all, other);
+                }
+                hits.add(new Hit(JemSearchIndex.this, documents[at], scores[at], common.length > 0 ? common : all));
+            }
+            return hits;
+        }
+    }
+
+    private static int[] intersection(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, k = 0; i < a.length && k < b.length; ) {
+            if (a[i] < b[k]) {
+                i++;
+            } else if (a[i] > b[k]) {
+                k++;
+            } else {
+                both[count++] = a[i];
+                i++;
+                k++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] either = new int[a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int k = 0;
+        while (i < a.length || k < b.length) {
+            if (k == b.length || (i < a.length && a[i] < b[k])) {
+                either[count++] = a[i++];
+            } else if (i == a.length || b[k] < a[i]) {
+                either[count++] = b[k++];
+            } else {
+                either[count++] = a[i];
+                i++;
+                k++;
+            }
+        }
+        return Arrays.copyOf(either, count);
+    }
+
+    // calls the sink with every term of [start, end) of the text: runs of letters and digits, lower-cased
+    static void scanTerms(CharSequence text, int start, int end, StringBuilder term, TermSink sink) {
+        term.setLength(0);
+        boolean tooLong = false;
+        int i = start;
+        while (i <= end) {
+            int c = i < end ? Character.codePointAt(text, i) : -1;
+            if (c >= 0 && Character.isLetterOrDigit(c)) {
+                if (term.length() < MAX_TERM_LENGTH) {
+                    term.appendCodePoint(Character.toLowerCase(c));
+                } else {
+                    tooLong = true;
+                }
+                i += Character.charCount(c);
+                continue;
+            }
+            if (term.length() > 0 && !tooLong) {
+                sink.term(term.toString());
+            }
+            term.setLength(0);
+            tooLong = false;
+            i += c >= 0 ? Character.charCount(c) : 1;
+        }
+    }
+
+    interface TermSink {
+        void term(String term);
+    }
+
+    public static final class Hit {
+        private final JemSearchIndex index;
+        private final int document;
+        private final int score;
+        private final int[] sections;
+
+        Hit(JemSearchIndex index, int document, int score, int[] sections) {
+            this.index = index;
+            this.document = document;
+            this.score = score;
+            this.sections = sections;
+        }
+
+        public int document() {
+            return document;
+        }
+
+        public String name() {
+            return index.name(document);
+        }
+
+        public int score() {
+            return score;
+        }
+
+        // the IDs of the headings (as rendered by JemDocument.html()) of the sections all the terms of the
+        // query occur in, or if there are none, of the sections any of them occurs in, in document order;
+        // text before the first heading has no ID
+        public List<String> anchors() {
+            List<String> anchors = new ArrayList<>(sections.length);
+            StringBuilder anchor = new StringBuilder();
+            for (int section : sections) {
+                if (section > 0) {
+                    anchor.setLength(0);
+                    try {
+                        JemRenderer.appendHeadingID(anchor, section);
+                    } catch (IOException e) {
+                        // a StringBuilder does not throw
+                        throw new UncheckedIOException(e);
+                    }
+                    anchors.add(anchor.toString());
+                }
+            }
+            return anchors;
+        }
+
+        @Override
+        public String toString() {
+            List<String> anchors = anchors();
+            return name() + (anchors.isEmpty() ? "" : "#" + anchors.get(0)) + " (" + score + ")";
+        }
+    }
+
+    // usage: JemSearchIndex [--limit N] <index file> <query>
+    public static void main(String[] args) throws IOException {
+        int limit = 10;
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--limit")) {
+                if (i + 1 == args.length) {
+                    usage();
+                    return;
+                }
+                limit = Integer.parseInt(args[++i]);
+            } else {
+                rest.add(args[i]);
+            }
+        }
+        if (rest.size() < 2) {
+            usage();
+            return;
+        }
+        JemSearchIndex index = open(Paths.get(rest.get(0)));
+        for (Hit hit : index.search(String.join(" ", rest.subList(1, rest.size())), limit)) {
+            System.out.println(hit);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: JemSearchIndex [--limit N] <index file> <query>");
+        System.exit(2);
+    }
+}
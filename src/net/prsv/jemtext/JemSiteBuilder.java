@@ -0,0 +1,382 @@
+package net.prsv.jemtext;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// keeps an HTML (and/or Markdown) mirror of a tree of .gmi files up to date, like JemBatchConverter, but
+// converts only the files that were added or changed since the last build and deletes the output of the
+// files that were removed
+//
+// the target directory holds a manifest (.jemtext-manifest) with the size, the modification time and a
+// content hash of every source file, the render options and the output files. A file whose size and
+// modification time are unchanged is skipped without being read; otherwise it is read and hashed and
+// only converted if the hash changed too, so touching a file costs a read, not a render. A file that was
+// modified in the last two seconds before a build is hashed again by the next build, since a second
+// change within the resolution of the file time would not show. Changing the options converts every file.
+// The files to check and convert are processed on a work-stealing pool.
+public class JemSiteBuilder extends JemTreeConverter<JemSiteBuilder> {
+
+    public static final String MANIFEST = ".jemtext-manifest";
+
+    private static final String MANIFEST_HEADER = "jemtext-site 1";
+    private static final long RACY_MILLIS = 2000;
+
+    // brings the tree under target up to date with the tree under source
+    // throws only if the source tree cannot be walked or the manifest cannot be written,
+    // failures of single files end up in the result (and the files are tried again by the next build)
+    public Result build(Path source, Path target) throws IOException {
+        Result result = new Result();
+        long started = System.nanoTime();
+        long startedMillis = System.currentTimeMillis();
+        Files.createDirectories(target);
+        Path manifestFile = target.resolve(MANIFEST);
+        String options = options();
+        Map<String, Entry> previous = new HashMap<>();
+        boolean sameOptions = readManifest(manifestFile, options, previous);
+
+        List<SourceFile> files = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && file.getFileName().toString().endsWith(".gmi")) {
+                    files.add(new SourceFile(file, relative(source, file), attributes.size(),
+                            attributes.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Map<String, Entry> current = new ConcurrentHashMap<>(files.size() * 2);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (SourceFile file : files) {
+                Entry entry = previous.get(file.path);
+                pool.execute(() -> update(file, sameOptions ? entry : null, entry, target, startedMillis,
+                        current, result));
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // the outputs of the files that are gone
+        Set<String> paths = new HashSet<>(files.size() * 2);
+        for (SourceFile file : files) {
+            paths.add(file.path);
+        }
+        for (Entry entry : previous.values()) {
+            if (!paths.contains(entry.path)) {
+                deleteOutputs(entry, null, target);
+                result.removed.increment();
+            }
+        }
+
+        writeManifest(manifestFile, options, current);
+        result.elapsedNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    // checks a single file against its entry of the last build (NULL if it is new or the options changed)
+    private void update(SourceFile file, Entry entry, Entry previous, Path target, long startedMillis,
+                        Map<String, Entry> current, Result result) {
+        try {
+            List<String> outputs = outputs(file.path);
+            if (entry != null && entry.size == file.size && entry.modified == file.modified
+                    && outputsExist(target, outputs)) {
+                current.put(file.path, entry);
+                result.unchanged.increment();
+                return;
+            }
+            byte[] bytes = Files.readAllBytes(file.file);
+            JemHash hash = new JemHash().add(bytes, 0, bytes.length);
+            // a file changed in the same tick as it was looked at may change again unnoticed
+            long modified = file.modified > startedMillis - RACY_MILLIS ? -1 : file.modified;
+            Entry updated = new Entry(file.path, bytes.length, modified, hash.high(), hash.low(), outputs);
+            if (entry != null && entry.hash1 == updated.hash1 && entry.hash2 == updated.hash2
+                    && outputsExist(target, outputs)) {
+                // an entry kept by a failed build may list more outputs
+                deleteOutputs(entry, outputs, target);
+                current.put(file.path, updated);
+                result.unchanged.increment();
+                return;
+            }
+
+            JemDocument document = JemDocument.parse(new String(bytes, StandardCharsets.UTF_8));
+            write(document, target.resolve(file.path));
+            if (previous != null) {
+                // the outputs of options that are off now
+                deleteOutputs(previous, outputs, target);
+                result.changed.increment();
+            } else {
+                result.added.increment();
+            }
+            current.put(file.path, updated);
+        } catch (IOException | RuntimeException e) {
+            result.failures.add(new JemBatchConverter.Failure(file.file, e));
+            // the file stays in the manifest with every output it may have, so that they are deleted with it;
+            // it is hashed again by the next build
+            List<String> outputs = outputs(file.path);
+            if (previous != null) {
+                Set<String> all = new LinkedHashSet<>(previous.outputs);
+                all.addAll(outputs);
+                current.put(file.path, new Entry(file.path, previous.size, -1, previous.hash1, previous.hash2,
+                        new ArrayList<>(all)));
+            } else if (!outputs.isEmpty()) {
+                // a new file, which may have left some of its outputs
+                current.put(file.path, new Entry(file.path, -1, -1, 0, 0, outputs));
+            }
+        }
+    }
+
+    private static boolean outputsExist(Path target, List<String> outputs) {
+        for (String output : outputs) {
+            if (!Files.exists(target.resolve(output))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // deletes the outputs of the entry that are not kept, and the directories that end up empty
+    private static void deleteOutputs(Entry entry, List<String> keep, Path target) throws IOException {
+        for (String output : entry.outputs) {
+            if (keep != null && keep.contains(output)) {
+                continue;
+            }
+            Path file = target.resolve(output);
+            Files.deleteIfExists(file);
+            for (Path directory = file.getParent(); directory != null && !directory.equals(target);
+                 directory = directory.getParent()) {
+                try {
+                    Files.delete(directory);
+                } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // the path relative to the root with '/' separators, which is also the key in the manifest
+    private static String relative(Path root, Path file) {
+        StringBuilder path = new StringBuilder();
+        for (Path name : root.relativize(file)) {
+            if (path.length() > 0) {
+                path.append('/');
+            }
+            path.append(name);
+        }
+        return path.toString();
+    }
+
+    // the manifest is a text file: a header line with the version and the options, then a line per source
+    // file with its hash, size, modification time (-1 to check the hash), path and outputs, separated by tabs
+    // returns false if there is no manifest (of this version) or it was built with other options
+    private static boolean readManifest(Path file, String options, Map<String, Entry> entries) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(MANIFEST_HEADER + " ")) {
+                return false;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    continue;
+                }
+                List<String> outputs = new ArrayList<>();
+                for (int i = 5; i < fields.length; i++) {
+                    outputs.add(unescape(fields[i]));
+                }
+                Entry entry = new Entry(unescape(fields[4]), Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                        Long.parseUnsignedLong(fields[0], 16), Long.parseUnsignedLong(fields[1], 16), outputs);
+                entries.put(entry.path, entry);
+            }
+            return header.equals(MANIFEST_HEADER + " " + options);
+        } catch (RuntimeException e) {
+            // a damaged manifest means a full build
+            entries.clear();
+            return false;
+        }
+    }
+
+    // writes the manifest next to it first, so that an interrupted build leaves the old one
+    private static void writeManifest(Path file, String options, Map<String, Entry> entries) throws IOException {
+        List<String> paths = new ArrayList<>(entries.keySet());
+        Collections.sort(paths);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(MANIFEST_HEADER + " " + options);
+            writer.newLine();
+            for (String path : paths) {
+                Entry entry = entries.get(path);
+                writer.write(Long.toHexString(entry.hash1));
+                writer.write('\t');
+                writer.write(Long.toHexString(entry.hash2));
+                writer.write('\t');
+                writer.write(Long.toString(entry.size));
+                writer.write('\t');
+                writer.write(Long.toString(entry.modified));
+                writer.write('\t');
+                writer.write(escape(entry.path));
+                for (String output : entry.outputs) {
+                    writer.write('\t');
+                    writer.write(escape(output));
+                }
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // tabs, line terminators and backslashes in paths
+    private static String escape(String path) {
+        if (path.indexOf('\\') < 0 && path.indexOf('\t') < 0 && path.indexOf('\n') < 0 && path.indexOf('\r') < 0) {
+            return path;
+        }
+        return path.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String path) {
+        if (path.indexOf('\\') < 0) {
+            return path;
+        }
+        StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length()) {
+                char next = path.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static final class SourceFile {
+        final Path file;
+        final String path;
+        final long size;
+        final long modified;
+
+        SourceFile(Path file, String path, long size, long modified) {
+            this.file = file;
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private static final class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        final long hash1;
+        final long hash2;
+        final List<String> outputs;
+
+        Entry(String path, long size, long modified, long hash1, long hash2, List<String> outputs) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+            this.outputs = outputs;
+        }
+    }
+
+    // statistics of a build
+    public static class Result {
+        private final LongAdder added = new LongAdder();
+        private final LongAdder changed = new LongAdder();
+        private final LongAdder unchanged = new LongAdder();
+        private final LongAdder removed = new LongAdder();
+        private final ConcurrentLinkedQueue<JemBatchConverter.Failure> failures = new ConcurrentLinkedQueue<>();
+        private long elapsedNanos;
+
+        // the number of new files converted
+        public long added() {
+            return added.sum();
+        }
+
+        // the number of changed files converted again
+        public long changed() {
+            return changed.sum();
+        }
+
+        public long unchanged() {
+            return unchanged.sum();
+        }
+
+        // the number of files whose outputs were deleted
+        public long removed() {
+            return removed.sum();
+        }
+
+        public List<JemBatchConverter.Failure> failures() {
+            return Collections.unmodifiableList(new ArrayList<>(failures));
+        }
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d added, %d changed, %d unchanged, %d removed, %d failed, %.2f s",
+                    added(), changed(), unchanged(), removed(), failures.size(), elapsedNanos / 1e9);
+        }
+    }
+
+    // usage: JemSiteBuilder [--html] [--markdown] [--threads N] [--strict] [--no-images] [--no-image-links]
+    //                       <source directory> <target directory>
+    // without --html or --markdown only HTML is written
+    public static void main(String[] args) throws IOException {
+        JemSiteBuilder builder = new JemSiteBuilder();
+        List<String> paths = builder.parseArguments("JemSiteBuilder", args);
+        if (paths == null) {
+            return;
+        }
+        Result result = builder.build(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+        for (JemBatchConverter.Failure failure : result.failures()) {
+            System.err.println(failure);
+        }
+        System.out.println(result);
+        if (!result.failures().isEmpty()) {
+            System.exit(1);
+        }
+    }
+}
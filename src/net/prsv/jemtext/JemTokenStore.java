@@ -0,0 +1,212 @@
+package net.prsv.jemtext;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// compact token stream: one entry per line, kept in parallel primitive arrays
+// instead of a JemToken (plus JemHeading, JemLink and a copy of the line) per line
+// the text of a token is not copied, starts/ends are offsets into the source
+//
+//   types           JemToken.Type ordinal
+//   starts, ends    text of the token, the heading text or the link URL (start is -1 if there is no text)
+//   aux1, aux2      link: alt text offsets (-1 if the alt text is the URL)
+//                   heading: level and count
+class JemTokenStore {
+
+    private static final JemToken.Type[] TYPES = JemToken.Type.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CharSequence source;
+    private int size = 0;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] aux1 = new int[INITIAL_CAPACITY];
+    private int[] aux2 = new int[INITIAL_CAPACITY];
+
+    JemTokenStore(CharSequence source) {
+        this.source = source;
+    }
+
+    // a store of a known size whose entries are filled in with set()
+    JemTokenStore(CharSequence source, int size) {
+        this.source = source;
+        this.size = size;
+        types = new byte[size];
+        starts = new int[size];
+        ends = new int[size];
+        aux1 = new int[size];
+        aux2 = new int[size];
+    }
+
+    void add(JemToken.Type type, int start, int end, int a1, int a2) {
+        if (size == types.length) {
+            grow(Math.max(INITIAL_CAPACITY, size + (size >> 1)));
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        aux1[size] = a1;
+        aux2[size] = a2;
+        size++;
+    }
+
+    void set(int i, JemToken.Type type, int start, int end, int a1, int a2) {
+        types[i] = (byte) type.ordinal();
+        starts[i] = start;
+        ends[i] = end;
+        aux1[i] = a1;
+        aux2[i] = a2;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > types.length) {
+            grow(Math.max(capacity, size + (size >> 1)));
+        }
+    }
+
+    // drops the spare capacity once the store is complete
+    void trimToSize() {
+        if (size < types.length) {
+            grow(size);
+        }
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        aux1 = Arrays.copyOf(aux1, capacity);
+        aux2 = Arrays.copyOf(aux2, capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    CharSequence source() {
+        return source;
+    }
+
+    JemToken.Type type(int i) {
+        return TYPES[types[i]];
+    }
+
+    boolean hasText(int i) {
+        return starts[i] >= 0;
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int end(int i) {
+        return ends[i];
+    }
+
+    // the text of the token, the heading text or the link URL; may be NULL
+    String text(int i) {
+        return starts[i] < 0 ? null : source.subSequence(starts[i], ends[i]).toString();
+    }
+
+    boolean isEmptyText(int i) {
+        return starts[i] < 0 || starts[i] == ends[i];
+    }
+
+    // true if the text is missing or consists of whitespace only (the same as text.strip().equals(""))
+    boolean isBlankText(int i) {
+        if (starts[i] < 0) {
+            return true;
+        }
+        if (source instanceof JemUtf8Text) {
+            JemUtf8Text utf8 = (JemUtf8Text) source;
+            int c = starts[i];
+            int whitespace;
+            while (c < ends[i] && (whitespace = utf8.whitespaceAt(c, ends[i])) > 0) {
+                c += whitespace;
+            }
+            return c == ends[i];
+        }
+        for (int c = starts[i]; c < ends[i]; c++) {
+            if (!Character.isWhitespace(source.charAt(c))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int aux1(int i) {
+        return aux1[i];
+    }
+
+    int aux2(int i) {
+        return aux2[i];
+    }
+
+    boolean hasAltText(int i) {
+        return aux1[i] >= 0;
+    }
+
+    int altStart(int i) {
+        return aux1[i] >= 0 ? aux1[i] : starts[i];
+    }
+
+    int altEnd(int i) {
+        return aux1[i] >= 0 ? aux2[i] : ends[i];
+    }
+
+    String altText(int i) {
+        return source.subSequence(altStart(i), altEnd(i)).toString();
+    }
+
+    int headingLevel(int i) {
+        return aux1[i];
+    }
+
+    int headingCount(int i) {
+        return aux2[i];
+    }
+
+    // materializes a single token
+    JemToken token(int i) {
+        JemToken token = new JemToken();
+        token.type = type(i);
+        switch (token.type) {
+            case JT_HEADING:
+                token.heading.text = text(i);
+                token.heading.level = headingLevel(i);
+                token.heading.count = headingCount(i);
+                break;
+            case JT_LINK:
+                token.link.url = text(i);
+                token.link.altText = hasAltText(i) ? altText(i) : token.link.url;
+                break;
+            default:
+                token.text = text(i);
+        }
+        return token;
+    }
+
+    // the JemToken API as a read-only view, every get() materializes a new token
+    List<JemToken> tokens() {
+        return new AbstractList<>() {
+            @Override
+            public JemToken get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return token(index);
+            }
+
+            @Override
+            public int size() {
+                return JemTokenStore.this.size();
+            }
+        };
+    }
+}
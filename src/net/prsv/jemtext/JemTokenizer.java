@@ -0,0 +1,363 @@
+package net.prsv.jemtext;
+
+import java.util.Arrays;
+
+// turns Gemtext lines into tokens, one line at a time
+// the pre and pass-through toggles, the heading counter and the title are carried over
+// from line to line, so the lines of a document have to be fed in order
+class JemTokenizer {
+
+    // the state bits, see state()
+    static final int PRE = 1;
+    static final int PASSTHRU = 2;
+
+    private final JemTokenStore store;
+    private final CharSequence source;
+    // set if the source is UTF-8 bytes rather than chars
+    private final JemUtf8Text utf8;
+
+    // a detached tokenizer does not know the state it starts in: it classifies every line as if it was
+    // outside pre and pass-through blocks, records every toggle as *_BEGIN and keeps the line bounds,
+    // so that the tokens can be fixed up later (see JemParallelParser)
+    private final boolean detached;
+    private int[] lineStarts;
+    private int[] lineEnds;
+
+    // an outline tokenizer keeps the headings and the links only, and a title-only one stops at the title
+    // (see JemOutline)
+    private boolean outline = false;
+    private boolean titleOnly = false;
+
+    // the limits of an untrusted input (see JemLimits); a limit that truncates the document stops the
+    // tokenizer, and every line after it is ignored
+    private JemLimits limits = JemLimits.NONE;
+    private boolean stopped = false;
+    private int blockLines = 0;
+
+    private boolean pre = false;
+    private boolean passthru = false;
+    private int headingCount = 0;
+    private int titleIndex = -1;
+
+    JemTokenizer(JemTokenStore store) {
+        this(store, false);
+    }
+
+    JemTokenizer(JemTokenStore store, boolean detached) {
+        this.store = store;
+        this.source = store.source();
+        this.utf8 = source instanceof JemUtf8Text ? (JemUtf8Text) source : null;
+        this.detached = detached;
+        if (detached) {
+            lineStarts = new int[64];
+            lineEnds = new int[64];
+        }
+    }
+
+    // a tokenizer that resumes in the middle of a document, in the given state and after the given
+    // number of headings (see JemIncrementalParser)
+    JemTokenizer(JemTokenStore store, int state, int headingCount) {
+        this(store, false);
+        this.pre = (state & PRE) != 0;
+        this.passthru = (state & PASSTHRU) != 0;
+        this.headingCount = headingCount;
+    }
+
+    static JemTokenizer outline(JemTokenStore store, boolean titleOnly) {
+        JemTokenizer tokenizer = new JemTokenizer(store, false);
+        tokenizer.outline = true;
+        tokenizer.titleOnly = titleOnly;
+        return tokenizer;
+    }
+
+    static JemTokenizer limited(JemTokenStore store, JemLimits limits) {
+        JemTokenizer tokenizer = new JemTokenizer(store, false);
+        tokenizer.limits = limits;
+        return tokenizer;
+    }
+
+    // splits the whole source into lines the same way as String.split("\\R") and tokenizes them
+    void tokenize() {
+        int length = source.length();
+        if (length > limits.maxInput()) {
+            limits.exceeded(JemLimits.Limit.INPUT, 0);
+            length = boundary((int) limits.maxInput());
+        }
+        if (length == 0) {
+            // an empty input is a single empty line
+            next(0, 0);
+            return;
+        }
+        tokenize(0, contentEnd(length));
+    }
+
+    // tokenizes the lines in [from, end), from has to be the start of a line
+    // and end either the end of the content or the position right after a line terminator
+    void tokenize(int from, int end) {
+        // a line that is too long is rejected before the rest of it is scanned
+        int abortLength = limits.truncate() ? Integer.MAX_VALUE : limits.maxLineLength();
+        int lineStart = from;
+        int i = from;
+        while (i < end) {
+            int terminator = terminatorAt(i, end);
+            if (terminator > 0) {
+                next(lineStart, i);
+                if (stopped || (titleOnly && titleIndex >= 0)) {
+                    return;
+                }
+                i += terminator;
+                if (source.charAt(i - 1) == '\r' && i < end && source.charAt(i) == '\n') {
+                    i++;
+                }
+                lineStart = i;
+            } else if (++i - lineStart > abortLength) {
+                limits.exceeded(JemLimits.Limit.LINE_LENGTH, store.size() + 1);
+            }
+        }
+        if (lineStart < end) {
+            next(lineStart, end);
+        }
+    }
+
+    // the end of the first length chars (bytes) of the source without the trailing line terminators,
+    // since trailing empty lines are dropped
+    private int contentEnd(int length) {
+        if (utf8 == null) {
+            return contentEnd(source, length);
+        }
+        int end = length;
+        int terminator;
+        while (end > 0 && (terminator = utf8.terminatorBefore(end, 0)) > 0) {
+            end -= terminator;
+        }
+        return end;
+    }
+
+    // the end of the input without the trailing line terminators, since trailing empty lines are dropped
+    static int contentEnd(CharSequence input) {
+        return contentEnd(input, input.length());
+    }
+
+    private static int contentEnd(CharSequence input, int end) {
+        while (end > 0 && JemLineReader.isLineTerminator(input.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    // moves the end of a prefix of the source back so that it does not split a character
+    private int boundary(int end) {
+        if (utf8 != null) {
+            while (end > 0 && (utf8.byteAt(end) & 0xC0) == 0x80) {
+                end--;
+            }
+        } else if (end > 0 && Character.isHighSurrogate(source.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private int terminatorAt(int i, int end) {
+        if (utf8 == null) {
+            return JemLineReader.isLineTerminator(source.charAt(i)) ? 1 : 0;
+        }
+        return utf8.terminatorAt(i, end);
+    }
+
+    // classifies a single line (without its line terminator) given by its offsets into the source
+    // the line type is decided by looking at the first few characters of the stripped line,
+    // the URL, the alt text and the heading text are located by index arithmetic
+    void next(int lineStart, int lineEnd) {
+        if (stopped) {
+            return;
+        }
+        if (store.size() == limits.maxTokens()) {
+            stop(JemLimits.Limit.TOKENS);
+            return;
+        }
+        if (lineEnd - lineStart > limits.maxLineLength()) {
+            limits.exceeded(JemLimits.Limit.LINE_LENGTH, store.size() + 1);
+            lineEnd = boundary(lineStart + limits.maxLineLength());
+        }
+        if (detached) {
+            int line = store.size();
+            if (line == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, line + (line >> 1));
+                lineEnds = Arrays.copyOf(lineEnds, line + (line >> 1));
+            }
+            lineStarts[line] = lineStart;
+            lineEnds[line] = lineEnd;
+        }
+        // same bounds as line.strip(), but without copying the line
+        int start = lineStart;
+        int end = lineEnd;
+        if (utf8 == null) {
+            while (start < end && Character.isWhitespace(source.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(source.charAt(end - 1))) {
+                end--;
+            }
+        } else {
+            int whitespace;
+            while (start < end && (whitespace = utf8.whitespaceAt(start, end)) > 0) {
+                start += whitespace;
+            }
+            while (end > start && (whitespace = utf8.whitespaceBefore(end, start)) > 0) {
+                end -= whitespace;
+            }
+        }
+        int length = end - start;
+        char first = length > 0 ? source.charAt(start) : 0;
+
+        // the toggles are recognised in every state, so they are checked first
+        if (first == '`' && length >= 3 && source.charAt(start + 1) == '`' && source.charAt(start + 2) == '`') {
+            if (!detached)
+                pre = !pre;
+            blockLines = 0;
+            if (pre || detached) {
+                if (length > 3)
+                    add(JemToken.Type.JT_PRE_BEGIN, start + 3, end, -1, -1);
+                else
+                    add(JemToken.Type.JT_PRE_BEGIN, -1, -1, -1, -1);
+            }
+            else
+                add(JemToken.Type.JT_PRE_END, -1, -1, -1, -1);
+            return;
+        }
+        if (first == '+' && length == 3 && source.charAt(start + 1) == '+' && source.charAt(start + 2) == '+') {
+            if (!detached)
+                passthru = !passthru;
+            blockLines = 0;
+            if (passthru || detached)
+                add(JemToken.Type.JT_PASSTHRU_BEGIN, -1, -1, -1, -1);
+            else
+                add(JemToken.Type.JT_PASSTHRU_END, -1, -1, -1, -1);
+            return;
+        }
+        if ((pre || passthru) && ++blockLines > limits.maxBlockLines()) {
+            stop(JemLimits.Limit.BLOCK_LINES);
+            return;
+        }
+        if (pre) {
+            add(JemToken.Type.JT_PRE_TEXT, lineStart, lineEnd, -1, -1);
+            return;
+        }
+        if (passthru) {
+            add(JemToken.Type.JT_PASSTHRU_TEXT, lineStart, lineEnd, -1, -1);
+            return;
+        }
+
+        switch (first) {
+            case '=':
+                if (length >= 2 && source.charAt(start + 1) == '>') {
+                    int urlStart = skipSpaces(source, start + 2, end);
+                    int urlEnd = urlStart;
+                    while (urlEnd < end && !isSpace(source.charAt(urlEnd))) {
+                        urlEnd++;
+                    }
+                    // a link needs a non-empty URL, otherwise the line is plain text
+                    if (urlEnd > urlStart) {
+                        int altStart = skipSpaces(source, urlEnd, end);
+                        if (altStart < end)
+                            store.add(JemToken.Type.JT_LINK, urlStart, urlEnd, altStart, end);
+                        else
+                            store.add(JemToken.Type.JT_LINK, urlStart, urlEnd, -1, -1);
+                        return;
+                    }
+                } else if (length == 3 && source.charAt(start + 1) == '=' && source.charAt(start + 2) == '=') {
+                    add(JemToken.Type.JT_HR, -1, -1, -1, -1);
+                    return;
+                }
+                break;
+            case '#':
+                int level = 1;
+                while (level < 3 && start + level < end && source.charAt(start + level) == '#') {
+                    level++;
+                }
+                // the level markers have to be followed by at least one space
+                if (start + level < end && isSpace(source.charAt(start + level))) {
+                    if (headingCount == limits.maxHeadings()) {
+                        stop(JemLimits.Limit.HEADINGS);
+                        return;
+                    }
+                    headingCount++;
+                    if (level == 1 && titleIndex < 0) {
+                        titleIndex = store.size();
+                    }
+                    store.add(JemToken.Type.JT_HEADING, skipSpaces(source, start + level, end), end,
+                            level, headingCount);
+                    return;
+                }
+                break;
+            case '*':
+                if (length >= 2 && isSpace(source.charAt(start + 1))) {
+                    add(JemToken.Type.JT_LIST_ITEM, skipSpaces(source, start + 1, end), end, -1, -1);
+                    return;
+                }
+                break;
+            case '>':
+                add(JemToken.Type.JT_BLOCKQUOTE, skipSpaces(source, start + 1, end), end, -1, -1);
+                return;
+        }
+
+        add(JemToken.Type.JT_TEXT, lineStart, lineEnd, -1, -1);
+    }
+
+    // ends the document before the current line, unless the limits throw
+    private void stop(JemLimits.Limit limit) {
+        limits.exceeded(limit, store.size() + 1);
+        stopped = true;
+    }
+
+    // every line but the headings and the links is dropped by an outline tokenizer
+    private void add(JemToken.Type type, int start, int end, int a1, int a2) {
+        if (!outline) {
+            store.add(type, start, end, a1, a2);
+        }
+    }
+
+    // bounds of the line a token was made from (detached tokenizers only)
+    int lineStart(int token) {
+        return lineStarts[token];
+    }
+
+    int lineEnd(int token) {
+        return lineEnds[token];
+    }
+
+    // whether the next line is inside a pre block (PRE) and/or a pass-through block (PASSTHRU)
+    int state() {
+        return (pre ? PRE : 0) | (passthru ? PASSTHRU : 0);
+    }
+
+    int headingCount() {
+        return headingCount;
+    }
+
+    // whether a limit has cut the document short
+    boolean stopped() {
+        return stopped;
+    }
+
+    boolean hasTitle() {
+        return titleIndex >= 0;
+    }
+
+    // the first level 1 heading seen so far, may be NULL
+    String title() {
+        return titleIndex < 0 ? null : store.text(titleIndex);
+    }
+
+    // the whitespace class of the original line patterns (\s), which is narrower than strip()
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    static int skipSpaces(CharSequence line, int from, int end) {
+        while (from < end && isSpace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,157 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// what JemBatchConverter and JemSiteBuilder have in common: the render options, the rendering of a single
+// document to its outputs and the command line
+abstract class JemTreeConverter<T extends JemTreeConverter<T>> {
+
+    boolean html = true;
+    boolean markdown = false;
+    boolean strict = false;
+    boolean expandImages = true;
+    boolean linkImages = true;
+    int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @SuppressWarnings("unchecked")
+    private T self() {
+        return (T) this;
+    }
+
+    public T html(boolean html) {
+        this.html = html;
+        return self();
+    }
+
+    public T markdown(boolean markdown) {
+        this.markdown = markdown;
+        return self();
+    }
+
+    // the flags passed to JemDocument.html() and JemDocument.markdown()
+    public T strict(boolean strict) {
+        this.strict = strict;
+        return self();
+    }
+
+    public T expandImages(boolean expandImages) {
+        this.expandImages = expandImages;
+        return self();
+    }
+
+    public T linkImages(boolean linkImages) {
+        this.linkImages = linkImages;
+        return self();
+    }
+
+    // the number of files converted at the same time
+    public T parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return self();
+    }
+
+    // the options that decide the outputs, as text
+    String options() {
+        return "html=" + html + " markdown=" + markdown + " strict=" + strict + " expandImages=" + expandImages
+                + " linkImages=" + linkImages;
+    }
+
+    // the outputs of a .gmi file (a path or a file name), in the order write() writes them
+    List<String> outputs(String file) {
+        String base = file.substring(0, file.length() - ".gmi".length());
+        if (html && markdown) {
+            return List.of(base + ".html", base + ".md");
+        }
+        if (html) {
+            return List.of(base + ".html");
+        }
+        return markdown ? List.of(base + ".md") : List.of();
+    }
+
+    // renders the document into the outputs of the .gmi file target and returns the number of bytes written
+    long write(JemDocument document, Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        long written = 0;
+        if (html) {
+            Path output = withExtension(target, ".html");
+            try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                document.html(writer, strict, expandImages, linkImages);
+            }
+            written += Files.size(output);
+        }
+        if (markdown) {
+            Path output = withExtension(target, ".md");
+            try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                document.markdown(writer, expandImages);
+            }
+            written += Files.size(output);
+        }
+        return written;
+    }
+
+    private static Path withExtension(Path file, String extension) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - ".gmi".length()) + extension);
+    }
+
+    // takes the options off the command line and returns the source and the target directory, or NULL
+    // after printing the usage if the arguments are wrong
+    // without --html or --markdown only HTML is written
+    List<String> parseArguments(String name, String[] args) {
+        boolean htmlGiven = false;
+        boolean markdownGiven = false;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--html":
+                    htmlGiven = true;
+                    break;
+                case "--markdown":
+                    markdownGiven = true;
+                    break;
+                case "--threads":
+                    if (i + 1 == args.length) {
+                        usage(name);
+                        return null;
+                    }
+                    parallelism(Integer.parseInt(args[++i]));
+                    break;
+                case "--strict":
+                    strict(true);
+                    break;
+                case "--no-images":
+                    expandImages(false);
+                    break;
+                case "--no-image-links":
+                    linkImages(false);
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        if (paths.size() != 2) {
+            usage(name);
+            return null;
+        }
+        if (htmlGiven || markdownGiven) {
+            html(htmlGiven);
+            markdown(markdownGiven);
+        }
+        return paths;
+    }
+
+    private static void usage(String name) {
+        System.err.println("usage: " + name + " [--html] [--markdown] [--threads N] [--strict] [--no-images] "
+                + "[--no-image-links] <source directory> <target directory>");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,197 @@
+package net.prsv.jemtext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// a Gemtext document parsed from UTF-8 bytes and rendered as UTF-8 bytes, without decoding it into a String
+//
+// the lines are classified and the text is escaped on the bytes themselves (see JemUtf8Text), and the
+// renderers copy the bytes of the source straight into the output. The output is byte for byte the same
+// as rendering JemDocument.parse(new String(bytes, UTF_8)) and encoding the result as UTF-8.
+//
+// malformed UTF-8 is handled as set by MalformedInput: REPORT throws a MalformedInputException, REPLACE
+// (the default) decodes the document with the usual replacement of every malformed sequence by U+FFFD
+// and renders the decoded text, exactly like the String path does
+// a document is immutable; the input buffer must not be changed while the document is in use
+// an untrusted input can be parsed with JemLimits, which are counted in bytes here
+public final class JemUtf8Document {
+
+    public enum MalformedInput {
+        REPORT,
+        REPLACE
+    }
+
+    private final JemTokenStore tokenStream;
+    private final String title;
+    private final JemLimits limits;
+
+    private JemUtf8Document(JemTokenStore tokenStream, String title, JemLimits limits) {
+        this.tokenStream = tokenStream;
+        this.title = title;
+        this.limits = limits;
+    }
+
+    // parses the remaining bytes of the buffer, the position of the buffer is not changed
+    public static JemUtf8Document parse(ByteBuffer input) {
+        return parse(input, JemLimits.NONE);
+    }
+
+    // see JemDocument.parse(String, JemLimits), an input over the limit is rejected before it is looked at
+    public static JemUtf8Document parse(ByteBuffer input, JemLimits limits) {
+        try {
+            return parse(input, MalformedInput.REPLACE, limits);
+        } catch (MalformedInputException e) {
+            // not thrown when replacing
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static JemUtf8Document parse(ByteBuffer input, MalformedInput malformedInput) throws MalformedInputException {
+        return parse(input, malformedInput, JemLimits.NONE);
+    }
+
+    public static JemUtf8Document parse(ByteBuffer input, MalformedInput malformedInput, JemLimits limits)
+            throws MalformedInputException {
+        if (input.remaining() > limits.maxInput()) {
+            limits.exceeded(JemLimits.Limit.INPUT, 0);
+            int end = (int) limits.maxInput();
+            // a character is not split
+            while (end > 0 && (input.get(input.position() + end) & 0xC0) == 0x80) {
+                end--;
+            }
+            input = input.duplicate().limit(input.position() + end);
+        }
+        if (limits != JemLimits.NONE) {
+            limits = limits.copy();
+        }
+        JemUtf8Text text = new JemUtf8Text(input.duplicate());
+        int malformed = text.firstMalformed();
+        if (malformed >= 0) {
+            if (malformedInput == MalformedInput.REPORT) {
+                MalformedInputException e = new MalformedInputException(1);
+                e.initCause(new IllegalArgumentException("malformed UTF-8 at byte " + malformed));
+                throw e;
+            }
+            JemDocument document = JemDocument.parse(StandardCharsets.UTF_8.decode(input.duplicate()).toString(),
+                    limits);
+            return new JemUtf8Document(document.tokenStream(), document.title(), limits);
+        }
+        JemProbe probe = JemProbe.parse("utf8");
+        JemTokenStore store = new JemTokenStore(text);
+        JemTokenizer tokenizer = JemTokenizer.limited(store, limits);
+        tokenizer.tokenize();
+        store.trimToSize();
+        if (probe != null) {
+            probe.parsed(store, text.length());
+        }
+        return new JemUtf8Document(store, tokenizer.title(), limits);
+    }
+
+    // maps a UTF-8 encoded Gemtext file into memory and parses it (files up to 2 GB)
+    public static JemUtf8Document map(Path path) throws IOException {
+        return parse(mapFile(path));
+    }
+
+    public static JemUtf8Document map(Path path, MalformedInput malformedInput) throws IOException {
+        return parse(mapFile(path), malformedInput);
+    }
+
+    private static MappedByteBuffer mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // all renderers write nothing if the token stream is empty
+
+    public void html(OutputStream output, boolean strict, boolean expandImages, boolean linkImages) throws IOException {
+        html(new JemUtf8Sink(output), strict, expandImages, linkImages);
+    }
+
+    public void html(WritableByteChannel output, boolean strict, boolean expandImages, boolean linkImages)
+            throws IOException {
+        html(new JemUtf8Sink(output), strict, expandImages, linkImages);
+    }
+
+    private void html(JemUtf8Sink sink, boolean strict, boolean expandImages, boolean linkImages) throws IOException {
+        sink.limit(limits);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.HTML, sink, strict, expandImages, linkImages);
+        long escaped = JemRenderer.html(tokenStream, probe == null ? sink : probe.output(), strict, expandImages, linkImages);
+        sink.flush();
+        if (probe != null) {
+            probe.rendered(tokenStream, sink.written(), escaped);
+        }
+    }
+
+    public void markdown(OutputStream output, boolean expandImages) throws IOException {
+        markdown(new JemUtf8Sink(output), expandImages);
+    }
+
+    public void markdown(WritableByteChannel output, boolean expandImages) throws IOException {
+        markdown(new JemUtf8Sink(output), expandImages);
+    }
+
+    private void markdown(JemUtf8Sink sink, boolean expandImages) throws IOException {
+        sink.limit(limits);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.MARKDOWN, sink, false, expandImages, false);
+        long escaped = JemRenderer.markdown(tokenStream, probe == null ? sink : probe.output(), expandImages);
+        sink.flush();
+        if (probe != null) {
+            probe.rendered(tokenStream, sink.written(), escaped);
+        }
+    }
+
+    public void gemini(OutputStream output) throws IOException {
+        gemini(new JemUtf8Sink(output));
+    }
+
+    public void gemini(WritableByteChannel output) throws IOException {
+        gemini(new JemUtf8Sink(output));
+    }
+
+    private void gemini(JemUtf8Sink sink) throws IOException {
+        sink.limit(limits);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.GEMINI, sink, false, false, false);
+        JemRenderer.gemini(tokenStream, probe == null ? sink : probe.output());
+        sink.flush();
+        if (probe != null) {
+            probe.rendered(tokenStream, sink.written(), 0);
+        }
+    }
+
+    public void toc(OutputStream output) throws IOException {
+        toc(new JemUtf8Sink(output));
+    }
+
+    public void toc(WritableByteChannel output) throws IOException {
+        toc(new JemUtf8Sink(output));
+    }
+
+    private void toc(JemUtf8Sink sink) throws IOException {
+        sink.limit(limits);
+        JemProbe probe = JemProbe.render(JemMetrics.Format.TOC, sink, false, false, false);
+        long escaped = JemRenderer.toc(tokenStream, probe == null ? sink : probe.output());
+        sink.flush();
+        if (probe != null) {
+            probe.rendered(tokenStream, sink.written(), escaped);
+        }
+    }
+
+    public String title() {
+        return this.title; // may be NULL!
+    }
+
+    // the number of tokens (one per line of the source)
+    public int size() {
+        return tokenStream.size();
+    }
+}
@@ -0,0 +1,160 @@
+package net.prsv.jemtext;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// an Appendable that writes UTF-8 bytes into an OutputStream or a WritableByteChannel through a fixed buffer
+// text from a JemUtf8Text source is copied byte for byte, everything else (tags, entities, decoded text)
+// is encoded as UTF-8
+// the output can be bounded by JemLimits, in which case nothing past the limit is written out
+class JemUtf8Sink implements Appendable, Flushable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream stream;
+    private final WritableByteChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer channelBuffer;
+    private int count = 0;
+    private char pendingHighSurrogate = 0;
+    private long written = 0;
+    private JemLimits limits = JemLimits.NONE;
+    // set once the output is cut at the limit, everything after that is dropped
+    private boolean full = false;
+
+    JemUtf8Sink(OutputStream stream) {
+        this.stream = stream;
+        this.channel = null;
+        this.channelBuffer = null;
+    }
+
+    JemUtf8Sink(WritableByteChannel channel) {
+        this.stream = null;
+        this.channel = channel;
+        this.channelBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    // bounds the bytes written by the output limit
+    JemUtf8Sink limit(JemLimits limits) {
+        this.limits = limits;
+        return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        if (full) {
+            return this;
+        }
+        if (csq instanceof JemUtf8Text) {
+            JemUtf8Text text = (JemUtf8Text) csq;
+            while (start < end) {
+                if (count == buffer.length) {
+                    drain();
+                }
+                int chunk = Math.min(end - start, buffer.length - count);
+                text.copy(start, start + chunk, buffer, count);
+                count += chunk;
+                start += chunk;
+            }
+            return this;
+        }
+        for (int i = start; i < end; i++) {
+            append(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        if (full) {
+            return this;
+        }
+        if (count + 4 > buffer.length) {
+            drain();
+        }
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                return this;
+            }
+            // unpaired surrogate, encoded as '?' like String.getBytes() does
+            buffer[count++] = '?';
+        }
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return this;
+    }
+
+    // writes out the buffered bytes, but does not flush the underlying stream
+    void drain() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        int length = count;
+        if (length > limits.maxOutput() - written) {
+            limits.exceeded(JemLimits.Limit.OUTPUT, 0);
+            length = (int) (limits.maxOutput() - written);
+            // a character is not split
+            while (length > 0 && (buffer[length] & 0xC0) == 0x80) {
+                length--;
+            }
+            full = true;
+        }
+        if (stream != null) {
+            stream.write(buffer, 0, length);
+        } else {
+            channelBuffer.clear().limit(length);
+            while (channelBuffer.hasRemaining()) {
+                channel.write(channelBuffer);
+            }
+        }
+        written += length;
+        count = 0;
+    }
+
+    // the number of bytes written out so far
+    long written() {
+        return written;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (pendingHighSurrogate != 0 && !full) {
+            pendingHighSurrogate = 0;
+            if (count == buffer.length) {
+                drain();
+            }
+            buffer[count++] = '?';
+        }
+        drain();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+}
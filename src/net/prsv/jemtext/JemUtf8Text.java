@@ -0,0 +1,190 @@
+package net.prsv.jemtext;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// UTF-8 encoded text seen as a CharSequence of bytes: charAt() returns the byte value (0-255)
+//
+// every Gemtext line marker and every character that htmlEncode() and mdEncode() escape is ASCII,
+// and in UTF-8 an ASCII byte is always the character itself, so the tokenizer and the escaping tables
+// can work on the bytes directly. Only line splitting and stripping have to know about the multi-byte
+// line terminators and whitespace, see the methods below.
+// toString() decodes the bytes, so that text which is needed as a String (titles, URLs) comes out right.
+final class JemUtf8Text implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    JemUtf8Text(ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.remaining());
+    }
+
+    private JemUtf8Text(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    int byteAt(int index) {
+        return bytes.get(offset + index) & 0xFF;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new JemUtf8Text(bytes, offset + start, end - start);
+    }
+
+    // copies the bytes in [start, end) into the target array
+    void copy(int start, int end, byte[] target, int targetOffset) {
+        bytes.get(offset + start, target, targetOffset, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] copy = new byte[length];
+        copy(0, length, copy, 0);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    // the length of the line terminator (\r\n counts as two single ones) that starts at index, 0 if there is none
+    // \n, \u000B, \f and \r are single bytes, \u0085 is C2 85, \u2028 and \u2029 are E2 80 A8 and E2 80 A9
+    int terminatorAt(int index, int end) {
+        int b = byteAt(index);
+        if (b >= '\n' && b <= '\r') {
+            return 1;
+        }
+        if (b == 0xC2 && index + 1 < end && byteAt(index + 1) == 0x85) {
+            return 2;
+        }
+        if (b == 0xE2 && index + 2 < end && byteAt(index + 1) == 0x80) {
+            int third = byteAt(index + 2);
+            if (third == 0xA8 || third == 0xA9) {
+                return 3;
+            }
+        }
+        return 0;
+    }
+
+    // the length of the line terminator that ends right before end, 0 if there is none
+    int terminatorBefore(int end, int start) {
+        int b = byteAt(end - 1);
+        if (b >= '\n' && b <= '\r') {
+            return 1;
+        }
+        if (b == 0x85 && end - 2 >= start && byteAt(end - 2) == 0xC2) {
+            return 2;
+        }
+        if ((b == 0xA8 || b == 0xA9) && end - 3 >= start && byteAt(end - 2) == 0x80 && byteAt(end - 3) == 0xE2) {
+            return 3;
+        }
+        return 0;
+    }
+
+    // the length of the whitespace character (as in Character.isWhitespace()) at index, 0 if there is none
+    // besides ASCII these are U+1680, U+2000-U+2006, U+2008-U+200A, U+2028, U+2029, U+205F and U+3000
+    int whitespaceAt(int index, int end) {
+        int b = byteAt(index);
+        if (b < 0x80) {
+            return Character.isWhitespace(b) ? 1 : 0;
+        }
+        if (index + 2 < end && isWhitespace(b, byteAt(index + 1), byteAt(index + 2))) {
+            return 3;
+        }
+        return 0;
+    }
+
+    // the length of the whitespace character that ends right before end, 0 if there is none
+    int whitespaceBefore(int end, int start) {
+        int b = byteAt(end - 1);
+        if (b < 0x80) {
+            return Character.isWhitespace(b) ? 1 : 0;
+        }
+        if (end - 3 >= start && isWhitespace(byteAt(end - 3), byteAt(end - 2), b)) {
+            return 3;
+        }
+        return 0;
+    }
+
+    private static boolean isWhitespace(int b1, int b2, int b3) {
+        switch (b1) {
+            case 0xE1:
+                return b2 == 0x9A && b3 == 0x80;
+            case 0xE2:
+                if (b2 == 0x80) {
+                    return (b3 >= 0x80 && b3 <= 0x8A && b3 != 0x87) || b3 == 0xA8 || b3 == 0xA9;
+                }
+                return b2 == 0x81 && b3 == 0x9F;
+            case 0xE3:
+                return b2 == 0x80 && b3 == 0x80;
+            default:
+                return false;
+        }
+    }
+
+    // the index of the first byte that is not part of well-formed UTF-8 (as accepted by the JDK decoder),
+    // or -1 if the whole text is well-formed
+    int firstMalformed() {
+        int i = 0;
+        while (i < length) {
+            int b = byteAt(i);
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int needed;
+            int min;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                needed = 1;
+                min = 0x80;
+            } else if (b == 0xE0) {
+                needed = 2;
+                min = 0xA0; // no overlong forms
+            } else if (b >= 0xE1 && b <= 0xEF) {
+                needed = 2;
+                min = 0x80;
+                if (b == 0xED) {
+                    max = 0x9F; // no surrogates
+                }
+            } else if (b == 0xF0) {
+                needed = 3;
+                min = 0x90;
+            } else if (b >= 0xF1 && b <= 0xF3) {
+                needed = 3;
+                min = 0x80;
+            } else if (b == 0xF4) {
+                needed = 3;
+                min = 0x80;
+                max = 0x8F; // nothing above U+10FFFF
+            } else {
+                return i;
+            }
+            if (i + needed >= length) {
+                return i;
+            }
+            int second = byteAt(i + 1);
+            if (second < min || second > max) {
+                return i;
+            }
+            for (int k = 2; k <= needed; k++) {
+                int next = byteAt(i + k);
+                if (next < 0x80 || next > 0xBF) {
+                    return i;
+                }
+            }
+            i += needed + 1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,59 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JTUtils;
+
+import static org.junit.Assert.*;
+
+public class JTUtilsTest {
+
+    @org.junit.Test
+    public void htmlEncode() throws Exception {
+        assertEquals("&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&apos;s&lt;/a&gt;\uFFFD",
+                JTUtils.htmlEncode("<a href=\"x\">Tom & Jerry's</a>\u0000"));
+    }
+
+    @org.junit.Test
+    public void fullEncode() throws Exception {
+        assertEquals("&Auml;&beta;&rarr;&le; &amp; plain", JTUtils.fullEncode("\u00C4\u03B2\u2192\u2264 & plain"));
+    }
+
+    @org.junit.Test
+    public void mdEncode() throws Exception {
+        assertEquals("\\*not\\* \\_emphasis\\_ \\[x\\]\\(y\\)",
+                JTUtils.mdEncode("*not* _emphasis_ [x](y)"));
+    }
+
+    @org.junit.Test
+    public void encode_unchangedInputIsReturned() throws Exception {
+        String plain = "Nothing to escape here";
+        assertSame(plain, JTUtils.htmlEncode(plain));
+        assertNull(JTUtils.htmlEncode(null));
+    }
+
+    @org.junit.Test
+    public void encode_appendableMatchesString() throws Exception {
+        StringBuilder all = new StringBuilder();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            all.append((char) c);
+        }
+        String input = all.toString();
+        StringBuilder html = new StringBuilder();
+        JTUtils.htmlEncode(input, html);
+        assertEquals(JTUtils.htmlEncode(input), html.toString());
+        StringBuilder full = new StringBuilder();
+        JTUtils.fullEncode(input, full);
+        assertEquals(JTUtils.fullEncode(input), full.toString());
+        StringBuilder md = new StringBuilder("prefix ");
+        JTUtils.mdEncode(input, 10, 200, md);
+        assertEquals("prefix " + JTUtils.mdEncode(input.substring(10, 200)), md.toString());
+    }
+
+    @org.junit.Test
+    public void encode_returnsEscapedCount() throws Exception {
+        StringBuilder output = new StringBuilder();
+        assertEquals(3, JTUtils.htmlEncode("Tom & <Jerry>", output));
+        assertEquals(0, JTUtils.htmlEncode("plain", output));
+        assertEquals(2, JTUtils.mdEncode("*x* and y", 0, 3, output));
+        assertEquals("Tom &amp; &lt;Jerry&gt;plain\\*x\\*", output.toString());
+    }
+}
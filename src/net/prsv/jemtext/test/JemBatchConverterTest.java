@@ -0,0 +1,82 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemBatchConverter;
+import net.prsv.jemtext.JemParser;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.Assert.*;
+
+public class JemBatchConverterTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    @org.junit.Test
+    public void convert_mirrorsTree() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        String first = "# First\n* Item\n";
+        String second = "=> https://example.org/cat.png A cat\n";
+        Files.createDirectories(source.resolve("posts"));
+        Files.writeString(source.resolve("index.gmi"), first);
+        Files.writeString(source.resolve("posts/second.gmi"), second);
+        Files.writeString(source.resolve("notes.txt"), "not Gemtext");
+
+        JemBatchConverter.Result result = new JemBatchConverter().markdown(true).parallelism(2)
+                .convert(source, target);
+
+        assertEquals(2, result.files());
+        assertTrue(result.failures().isEmpty());
+        JemParser jemParser = new JemParser();
+        jemParser.parse(first);
+        assertEquals(jemParser.html(), Files.readString(target.resolve("index.html"), StandardCharsets.UTF_8));
+        jemParser.parse(second);
+        assertEquals(jemParser.markdown(), Files.readString(target.resolve("posts/second.md"), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(target.resolve("notes.html")));
+    }
+
+    @org.junit.Test
+    public void convert_reportsFailures() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Files.writeString(source.resolve("good.gmi"), "Good\n");
+        Files.writeString(source.resolve("bad.gmi"), "Bad\n");
+        // the output file cannot be written, because a directory is in the way
+        Files.createDirectories(target.resolve("bad.html"));
+
+        JemBatchConverter.Result result = new JemBatchConverter().convert(source, target);
+
+        assertEquals(1, result.files());
+        assertEquals(1, result.failures().size());
+        assertEquals(source.resolve("bad.gmi"), result.failures().get(0).file());
+        assertTrue(Files.exists(target.resolve("good.html")));
+    }
+
+    @org.junit.Test
+    public void convert_reportsUnreadableDirectory() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Files.writeString(source.resolve("good.gmi"), "Good\n");
+        Path locked = Files.createDirectories(source.resolve("locked"));
+        Files.writeString(locked.resolve("hidden.gmi"), "Hidden\n");
+        org.junit.Assume.assumeTrue(Files.getFileStore(locked).supportsFileAttributeView("posix"));
+        Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+        try {
+            // root reads it anyway
+            org.junit.Assume.assumeFalse(Files.isReadable(locked));
+
+            JemBatchConverter.Result result = new JemBatchConverter().convert(source, target);
+
+            assertEquals(1, result.files());
+            assertEquals(1, result.failures().size());
+            assertEquals(locked, result.failures().get(0).file());
+            assertTrue(Files.exists(target.resolve("good.html")));
+        } finally {
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+}
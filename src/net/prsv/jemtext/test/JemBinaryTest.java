@@ -0,0 +1,102 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemBinary;
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JemBinaryTest {
+
+    static void assertSameDocument(JemDocument expected, JemDocument actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.title(), actual.title());
+        assertEquals(expected.html(), actual.html());
+        assertEquals(expected.html(true, false, false), actual.html(true, false, false));
+        assertEquals(expected.markdown(), actual.markdown());
+        assertEquals(expected.gemini(), actual.gemini());
+        assertEquals(expected.toc(), actual.toc());
+    }
+
+    @org.junit.Test
+    public void roundTrip() throws Exception {
+        String[] inputs = {"", "\n\n", "# Title\n## Sub\n=> url\n=> url alt\n```pre alt\n text\n```\n+++\n<b>\n+++\n===\n",
+                "text 😀 café\n* item\n> quote\n```\n", "lone \uD800 surrogate"};
+        for (String input : inputs) {
+            JemDocument document = JemDocument.parse(input);
+            JemDocument copy = JemBinary.fromBytes(ByteBuffer.wrap(JemBinary.toBytes(document)));
+            assertSameDocument(JemDocument.parse(input.replace('\uD800', '?')), copy);
+        }
+        for (int seed = 0; seed < 20; seed++) {
+            JemDocument document = JemDocument.parse(new JemCorpusGenerator().seed(seed).nonAscii(0.3)
+                    .generate(32 << 10));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            JemBinary.write(document, output);
+            JemBinary.write(document, output);
+            ByteArrayInputStream input = new ByteArrayInputStream(output.toByteArray());
+            assertSameDocument(document, JemBinary.read(input));
+            assertSameDocument(document, JemBinary.read(input));
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @org.junit.Test
+    public void read_rejectsBadData() {
+        byte[] bytes = JemBinary.toBytes(JemDocument.parse("# Title\n=> url alt\n"));
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        byte[] badVersion = bytes.clone();
+        badVersion[4] = JemBinary.VERSION + 1;
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+        for (byte[] data : new byte[][] {badMagic, badVersion, truncated}) {
+            try {
+                JemBinary.fromBytes(ByteBuffer.wrap(data));
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void read_rejectsCorruptData() {
+        // a document that reads is one that renders, anything else is an IOException
+        Random random = new Random(19);
+        for (int seed = 0; seed < 4; seed++) {
+            byte[] bytes = JemBinary.toBytes(JemDocument.parse(new JemCorpusGenerator().seed(seed).nonAscii(0.3)
+                    .generate(2048)));
+            for (int length = 0; length < bytes.length; length++) {
+                assertReadsOrRejects(Arrays.copyOf(bytes, length));
+            }
+            for (int run = 0; run < 5000; run++) {
+                byte[] corrupt = bytes.clone();
+                for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                    corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+                }
+                assertReadsOrRejects(corrupt);
+            }
+        }
+    }
+
+    private static void assertReadsOrRejects(byte[] data) {
+        JemDocument document;
+        try {
+            document = JemBinary.fromBytes(ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            return;
+        }
+        document.html();
+        document.html(true, false, false);
+        document.markdown();
+        document.gemini();
+        document.toc();
+        document.tokens();
+    }
+}
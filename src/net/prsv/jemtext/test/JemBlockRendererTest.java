@@ -0,0 +1,89 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemBlockRenderer;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemIncrementalParser;
+import net.prsv.jemtext.JemLimitException;
+import net.prsv.jemtext.JemLimits;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JemBlockRendererTest {
+
+    @org.junit.Test
+    public void render_matchesHtml() {
+        Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            boolean strict = random.nextBoolean();
+            boolean expandImages = random.nextBoolean();
+            boolean linkImages = random.nextBoolean();
+            JemBlockRenderer renderer = new JemBlockRenderer(strict, expandImages, linkImages);
+            JemIncrementalParser parser = new JemIncrementalParser(JemTokenizerTest.randomDocument(random));
+            for (int edit = 0; edit < 10; edit++) {
+                JemDocument document = parser.document();
+                assertEquals("round " + round, document.html(strict, expandImages, linkImages),
+                        renderer.render(document).html());
+                int from = random.nextInt(parser.lineCount() + 1);
+                parser.replace(from, Math.min(parser.lineCount(), from + 1), JemTokenizerTest.randomDocument(random));
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void render_limitsOutput() {
+        String source = "# Title\n" + "Some text & more\n".repeat(50) + "* one\n* two\n```\ncode\n```\nLast\n";
+        String html = JemDocument.parse(source).html();
+        for (int max : new int[]{0, 10, 200, html.length() - 1, html.length()}) {
+            JemBlockRenderer renderer = new JemBlockRenderer();
+            // with the blocks of a full render to reuse, and without
+            renderer.render(JemDocument.parse(source));
+            for (int round = 0; round < 2; round++) {
+                JemDocument document = JemDocument.parse(source, new JemLimits().maxOutput(max).truncate(true));
+                assertEquals(html.substring(0, max), orEmpty(renderer.render(document).html()));
+                renderer.clear();
+            }
+            if (max < html.length()) {
+                try {
+                    renderer.render(JemDocument.parse(source, new JemLimits().maxOutput(max)));
+                    fail();
+                } catch (JemLimitException e) {
+                    assertEquals(JemLimits.Limit.OUTPUT, e.limit());
+                }
+            }
+        }
+        // the blocks that were cut are not reused
+        JemBlockRenderer renderer = new JemBlockRenderer();
+        renderer.render(JemDocument.parse(source, new JemLimits().maxOutput(20).truncate(true)));
+        assertEquals(html, renderer.render(JemDocument.parse(source)).html());
+    }
+
+    private static String orEmpty(String html) {
+        return html == null ? "" : html;
+    }
+
+    @org.junit.Test
+    public void render_reportsChangedBlocks() {
+        String source = "# Title\nFirst\n* one\n\n* two\n```\ncode\n```\nLast\n";
+        JemBlockRenderer renderer = new JemBlockRenderer();
+        JemIncrementalParser parser = new JemIncrementalParser(source);
+
+        JemBlockRenderer.Result first = renderer.render(parser.document());
+        assertEquals(5, first.blocks().size());
+        assertEquals(5, first.changedCount());
+        assertEquals("<ul>\n<li>one</li>\n<li>two</li>\n</ul>\n", first.blocks().get(2).html());
+
+        assertEquals(0, renderer.render(parser.document()).changedCount());
+
+        parser.replace(6, 7, "more code");
+        JemBlockRenderer.Result second = renderer.render(parser.document());
+        List<JemBlockRenderer.Block> changed = second.changedBlocks();
+        assertEquals(1, changed.size());
+        assertEquals(3, changed.get(0).index());
+        assertEquals(5, changed.get(0).firstLine());
+        assertEquals(8, changed.get(0).endLine());
+        assertEquals(parser.document().html(), second.html());
+    }
+}
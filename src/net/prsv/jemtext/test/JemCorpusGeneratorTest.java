@@ -0,0 +1,77 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemBatchConverter;
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemToken;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class JemCorpusGeneratorTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    @org.junit.Test
+    public void generate_isDeterministic() {
+        String first = new JemCorpusGenerator().seed(42).generate(64 << 10);
+        assertEquals(first, new JemCorpusGenerator().seed(42).generate(64 << 10));
+        assertNotEquals(first, new JemCorpusGenerator().seed(43).generate(64 << 10));
+        int bytes = first.getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(bytes >= 64 << 10);
+        assertTrue(bytes < (64 << 10) + 1024);
+    }
+
+    @org.junit.Test
+    public void generate_coversEveryTokenType() {
+        String input = new JemCorpusGenerator().seed(1).nonAscii(0.5).generate(256 << 10);
+        EnumSet<JemToken.Type> types = EnumSet.noneOf(JemToken.Type.class);
+        for (JemToken token : JemDocument.parse(input).tokens()) {
+            types.add(token.type);
+        }
+        assertEquals(EnumSet.allOf(JemToken.Type.class), types);
+        assertTrue(input.chars().anyMatch(c -> c > 0x7F));
+        assertTrue(input.chars().anyMatch(c -> Character.isSurrogate((char) c)));
+    }
+
+    @org.junit.Test
+    public void generate_followsWeights() {
+        JemCorpusGenerator generator = new JemCorpusGenerator().seed(7).images(1).altText(0);
+        for (JemToken.Type type : JemToken.Type.values()) {
+            generator.weight(type, 0);
+        }
+        generator.weight(JemToken.Type.JT_LINK, 1);
+        JemDocument document = JemDocument.parse(generator.generate(16 << 10));
+        assertTrue(document.size() > 100);
+        for (JemToken token : document.tokens()) {
+            assertEquals(JemToken.Type.JT_LINK, token.type);
+            assertEquals(token.link.url, token.link.altText);
+            assertTrue(token.link.url.matches("^\\S*\\.(?i)(gif|jpeg|jpg|jfif|png)$"));
+        }
+    }
+
+    @org.junit.Test
+    public void writeTree_isConvertible() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        long written = new JemCorpusGenerator().seed(3).writeTree(source, 40, 4096);
+
+        long bytes;
+        try (Stream<Path> files = Files.walk(source)) {
+            bytes = files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertEquals(written, bytes);
+        assertTrue(Files.exists(source.resolve("d00/page-000000.gmi")));
+        assertTrue(Files.exists(source.resolve("d02/page-000039.gmi")));
+
+        JemBatchConverter.Result result = new JemBatchConverter().convert(source, target);
+        assertEquals(40, result.files());
+        assertTrue(result.failures().isEmpty());
+    }
+}
@@ -0,0 +1,86 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemBatchConverter;
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemUtf8Document;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.Assert.*;
+
+public class JemFlightRecorderTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    @org.junit.Test
+    public void events_areRecorded() throws Exception {
+        String input = "# Title\n* a & b\n=> gemini://example.org <x>\n";
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        new JemCorpusGenerator().seed(1).writeTree(source, 3, 1024);
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            for (String event : new String[] {"Parse", "Render", "Batch", "BatchFile"}) {
+                recording.enable("net.prsv.jemtext." + event).withoutThreshold();
+            }
+            recording.start();
+            JemDocument document = JemDocument.parse(input);
+            document.html(true, false, true);
+            document.toc();
+            JemUtf8Document.parse(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)))
+                    .markdown(new ByteArrayOutputStream(), true);
+            new JemBatchConverter().parallelism(1).convert(source, target);
+            recording.stop();
+            Path file = folder.newFile("recording.jfr").toPath();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        List<RecordedEvent> parses = named(events, "net.prsv.jemtext.Parse");
+        // the document, the UTF-8 document and the 3 files
+        assertEquals(5, parses.size());
+        RecordedEvent parse = parses.get(0);
+        assertEquals("string", parse.getString("mode"));
+        assertEquals(input.length(), parse.getLong("inputLength"));
+        assertEquals(3, parse.getInt("tokens"));
+        assertEquals(1, parse.getInt("headings"));
+        assertEquals(1, parse.getInt("links"));
+        assertEquals("utf8", parses.get(1).getString("mode"));
+        assertEquals("reader", parses.get(2).getString("mode"));
+
+        List<RecordedEvent> renders = named(events, "net.prsv.jemtext.Render");
+        // the 3 files are rendered as HTML
+        assertEquals(6, renders.size());
+        RecordedEvent html = renders.get(0);
+        assertEquals("HTML", html.getString("format"));
+        assertTrue(html.getBoolean("strict"));
+        assertFalse(html.getBoolean("expandImages"));
+        assertEquals(JemDocument.parse(input).html(true, false, true).length(), html.getLong("outputLength"));
+        assertEquals(3, html.getLong("escaped"));
+        assertEquals("TOC", renders.get(1).getString("format"));
+        assertEquals("MARKDOWN", renders.get(2).getString("format"));
+
+        assertEquals(3, named(events, "net.prsv.jemtext.BatchFile").size());
+        RecordedEvent batch = named(events, "net.prsv.jemtext.Batch").get(0);
+        assertEquals(3, batch.getLong("files"));
+        assertEquals(0, batch.getLong("failures"));
+        assertTrue(batch.getLong("bytesOut") > 0);
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,244 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemGateway;
+import net.prsv.jemtext.JemLimits;
+import net.prsv.jemtext.JemParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class JemGatewayTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    private final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+    private Path root;
+    private JemGateway gateway;
+
+    @org.junit.Before
+    public void start() throws Exception {
+        root = folder.newFolder("capsule").toPath();
+        gateway = new JemGateway(root).start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @org.junit.After
+    public void stop() {
+        gateway.stop(0);
+    }
+
+    private HttpResponse<String> get(String path, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + gateway.port() + path));
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String html(String input) {
+        JemParser jemParser = new JemParser();
+        jemParser.parse(input);
+        return jemParser.html();
+    }
+
+    @org.junit.Test
+    public void get_convertsGemtext() throws Exception {
+        String input = "# Caf\u00E9 & more\nSome text\n=> other.gmi Other\n";
+        Files.writeString(root.resolve("page.gmi"), input);
+        HttpResponse<String> response = get("/page.gmi");
+        assertEquals(200, response.statusCode());
+        assertEquals("text/html; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(response.headers().firstValue("ETag").isPresent());
+        assertTrue(response.headers().firstValue("Last-Modified").isPresent());
+        String body = response.body();
+        assertTrue(body.startsWith("<!DOCTYPE html>"));
+        assertTrue(body.contains("<title>Caf\u00E9 &amp; more</title>"));
+        assertTrue(body.contains(html(input)));
+    }
+
+    @org.junit.Test
+    public void get_servesDirectoryIndex() throws Exception {
+        Files.createDirectories(root.resolve("posts"));
+        Files.writeString(root.resolve("posts/index.gmi"), "# Posts\n");
+        HttpResponse<String> redirect = get("/posts");
+        assertEquals(301, redirect.statusCode());
+        assertEquals("/posts/", redirect.headers().firstValue("Location").orElse(null));
+        HttpResponse<String> response = get("/posts/");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains(html("# Posts\n")));
+
+        // the redirect keeps the path as it was sent and the query
+        Files.createDirectories(root.resolve("my dir"));
+        HttpResponse<String> encoded = get("/my%20dir?page=2&sort=new");
+        assertEquals(301, encoded.statusCode());
+        assertEquals("/my%20dir/?page=2&sort=new", encoded.headers().firstValue("Location").orElse(null));
+    }
+
+    @org.junit.Test
+    public void get_servesOtherFilesAsTheyAre() throws Exception {
+        Files.writeString(root.resolve("notes.txt"), "# not converted\n");
+        HttpResponse<String> response = get("/notes.txt");
+        assertEquals(200, response.statusCode());
+        assertEquals("# not converted\n", response.body());
+    }
+
+    @org.junit.Test
+    public void get_missingAndOutsideFiles() throws Exception {
+        Files.writeString(folder.getRoot().toPath().resolve("secret.gmi"), "# Secret\n");
+        assertEquals(404, get("/missing.gmi").statusCode());
+        assertEquals(404, get("/../secret.gmi").statusCode());
+        assertEquals(404, get("/%2e%2e/secret.gmi").statusCode());
+    }
+
+    @org.junit.Test
+    public void get_revalidates() throws Exception {
+        Path page = root.resolve("page.gmi");
+        Files.writeString(page, "# One\n");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        HttpResponse<String> first = get("/page.gmi");
+        String tag = first.headers().firstValue("ETag").orElseThrow();
+        String modified = first.headers().firstValue("Last-Modified").orElseThrow();
+
+        HttpResponse<String> byTag = get("/page.gmi", "If-None-Match", tag);
+        assertEquals(304, byTag.statusCode());
+        assertEquals("", byTag.body());
+        assertEquals(304, get("/page.gmi", "If-None-Match", "\"other\", W/" + tag).statusCode());
+        assertEquals(304, get("/page.gmi", "If-Modified-Since", modified).statusCode());
+        // If-None-Match decides when both are there
+        assertEquals(200, get("/page.gmi", "If-None-Match", "\"other\"", "If-Modified-Since", modified).statusCode());
+
+        Files.writeString(page, "# Two, a little longer\n");
+        HttpResponse<String> changed = get("/page.gmi", "If-None-Match", tag);
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(tag, changed.headers().firstValue("ETag").orElse(null));
+        assertTrue(changed.body().contains(html("# Two, a little longer\n")));
+        assertEquals(200, get("/page.gmi", "If-Modified-Since", modified).statusCode());
+    }
+
+    @org.junit.Test
+    public void get_keepsConnectionAfterNotModified() throws Exception {
+        Files.writeString(root.resolve("page.gmi"), "# Page\n");
+        String tag = get("/page.gmi").headers().firstValue("ETag").orElseThrow();
+        String request = "GET /page.gmi HTTP/1.1\r\nHost: localhost\r\nIf-None-Match: " + tag + "\r\n\r\n";
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateway.port())) {
+            socket.setSoTimeout(5000);
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            for (int i = 0; i < 2; i++) {
+                socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+                assertEquals("HTTP/1.1 304 Not Modified", input.readLine());
+                String line;
+                while ((line = input.readLine()) != null && !line.isEmpty()) {
+                    // headers
+                }
+                assertNotNull(line);
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void get_queuesRequestsForThePool() throws Exception {
+        Files.writeString(root.resolve("page.gmi"), "# Page\n" + "text\n".repeat(1000));
+        gateway.stop(0);
+        gateway = new JemGateway(root).threads(1).queue(16)
+                .start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + gateway.port()
+                    + "/page.gmi")).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+        }
+        try {
+            new JemGateway(root).threads(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("threads must be at least 1", e.getMessage());
+        }
+    }
+
+    @org.junit.Test
+    public void get_enforcesLimits() throws Exception {
+        Files.writeString(root.resolve("small.gmi"), "# Small\n");
+        Files.writeString(root.resolve("large.gmi"), "# Large\n" + "text\n".repeat(1000));
+        Files.writeString(root.resolve("large.txt"), "text\n".repeat(1000));
+        gateway.stop(0);
+        gateway = new JemGateway(root).limits(new JemLimits().maxInput(100))
+                .start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        assertEquals(200, get("/small.gmi").statusCode());
+        assertEquals(500, get("/large.gmi").statusCode());
+        assertEquals(200, get("/large.txt").statusCode());
+
+        gateway.stop(0);
+        gateway = new JemGateway(root).limits(new JemLimits().maxInput(100).truncate(true))
+                .start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        HttpResponse<String> truncated = get("/large.gmi");
+        assertEquals(200, truncated.statusCode());
+        assertTrue(truncated.body().contains(html("# Large\n" + "text\n".repeat(18) + "te")));
+    }
+
+    @org.junit.Test
+    public void get_enforcesOutputLimit() throws Exception {
+        String input = "# Page\n" + "Some text & more\n".repeat(100);
+        Files.writeString(root.resolve("page.gmi"), input);
+        Files.writeString(root.resolve("huge.gmi"), "Some text & more\n".repeat(10_000));
+        gateway.stop(0);
+        gateway = new JemGateway(root).limits(new JemLimits().maxOutput(200))
+                .start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        HttpResponse<String> rejected = get("/page.gmi");
+        assertEquals(500, rejected.statusCode());
+        assertEquals("500 Internal Server Error\n", rejected.body());
+
+        // past the first 64 KB of a page the headers are out, and the response is cut short
+        gateway.stop(0);
+        gateway = new JemGateway(root).limits(new JemLimits().maxOutput(100_000))
+                .start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            get("/huge.gmi");
+            fail("a cut response was received as complete");
+        } catch (IOException expected) {
+            // expected
+        }
+        assertEquals(200, get("/page.gmi").statusCode());
+
+        gateway.stop(0);
+        gateway = new JemGateway(root).limits(new JemLimits().maxOutput(200).truncate(true))
+                .start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        HttpResponse<String> truncated = get("/page.gmi");
+        assertEquals(200, truncated.statusCode());
+        assertTrue(truncated.body().contains(html(input).substring(0, 200) + "</body>"));
+    }
+
+    @org.junit.Test
+    public void head_sendsHeadersOnly() throws Exception {
+        Files.writeString(root.resolve("page.gmi"), "# Page\n");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + gateway.port() + "/page.gmi"))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertEquals("", response.body());
+        assertTrue(response.headers().firstValue("ETag").isPresent());
+
+        HttpRequest post = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + gateway.port() + "/page.gmi"))
+                .POST(HttpRequest.BodyPublishers.ofString("x")).build();
+        assertEquals(405, client.send(post, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,95 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemIncrementalParser;
+import net.prsv.jemtext.JemToken;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JemIncrementalParserTest {
+
+    private static final String[] EDITS = {null, "", "\n", "\r", "text", "# Title", "## Section", "```", "``` alt",
+            "+++", "=> gemini://example.org/ Link", "* item", "> quote", "line\r\nline", "```\ncode\n```", "\u2028"};
+
+    @org.junit.Test
+    public void replace_matchesFullParse() {
+        Random random = new Random(11);
+        for (int round = 0; round < 300; round++) {
+            JemIncrementalParser parser = new JemIncrementalParser(JemTokenizerTest.randomDocument(random));
+            for (int edit = 0; edit < 20; edit++) {
+                int from = random.nextInt(parser.lineCount() + 1);
+                int to = Math.min(parser.lineCount(), from + random.nextInt(3));
+                String replacement = random.nextInt(4) == 0
+                        ? JemTokenizerTest.randomDocument(random)
+                        : EDITS[random.nextInt(EDITS.length)];
+                JemDocument actual = parser.replace(from, to, replacement);
+                assertDocumentEquals("round " + round + " edit " + edit, JemDocument.parse(parser.text()), actual);
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void replace_linesAndText() {
+        JemIncrementalParser parser = new JemIncrementalParser("# One\r\nText\n");
+        assertEquals(3, parser.lineCount());
+        parser.replace(1, 2, "```\ncode");
+        assertEquals("# One\r\n```\ncode\n", parser.text());
+        assertEquals(4, parser.lineCount());
+        assertEquals(JemToken.Type.JT_PRE_TEXT, parser.document().tokens().get(2).type);
+        parser.replace(0, 1, null);
+        assertEquals("```\ncode\n", parser.text());
+        assertNull(parser.document().title());
+        parser.replace(0, parser.lineCount(), null);
+        assertEquals("", parser.text());
+        assertEquals(1, parser.document().size());
+    }
+
+    @org.junit.Test
+    public void replace_keepsLineTerminators() {
+        JemIncrementalParser parser = new JemIncrementalParser("a\r\nb\u2028c");
+        parser.replace(1, 2, "x");
+        assertEquals("a\r\nx\u2028c", parser.text());
+        parser.replace(1, 1, "y");
+        assertEquals("a\r\ny\r\nx\u2028c", parser.text());
+        parser.replace(4, 4, "z");
+        assertEquals("a\r\ny\r\nx\u2028c\u2028z", parser.text());
+        parser.replace(3, 5, null);
+        assertEquals("a\r\ny\r\nx", parser.text());
+    }
+
+    @org.junit.Test
+    public void replace_largeDocumentMatchesFullParse() {
+        // documents of many chunks, where an edit reuses most of them
+        Random random = new Random(12);
+        for (int round = 0; round < 10; round++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 100_000) {
+                text.append(JemTokenizerTest.randomDocument(random)).append('\n');
+            }
+            JemIncrementalParser parser = new JemIncrementalParser(text.toString());
+            for (int edit = 0; edit < 30; edit++) {
+                int from = random.nextInt(parser.lineCount() + 1);
+                int to = Math.min(parser.lineCount(), from + random.nextInt(random.nextInt(8) == 0 ? 1000 : 3));
+                String replacement = random.nextInt(4) == 0
+                        ? JemTokenizerTest.randomDocument(random)
+                        : EDITS[random.nextInt(EDITS.length)];
+                JemDocument actual = parser.replace(from, to, replacement);
+                assertDocumentEquals("round " + round + " edit " + edit, JemDocument.parse(parser.text()), actual);
+            }
+        }
+    }
+
+    private static void assertDocumentEquals(String message, JemDocument expected, JemDocument actual) {
+        assertEquals(message, expected.size(), actual.size());
+        List<JemToken> expectedTokens = expected.tokens();
+        List<JemToken> actualTokens = actual.tokens();
+        for (int i = 0; i < expectedTokens.size(); i++) {
+            JemTokenizerTest.assertTokenEquals(message + " token " + i, expectedTokens.get(i), actualTokens.get(i));
+        }
+        assertEquals(message, expected.title(), actual.title());
+        assertEquals(message, expected.html(), actual.html());
+    }
+}
@@ -0,0 +1,242 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemLimitException;
+import net.prsv.jemtext.JemLimits;
+import net.prsv.jemtext.JemUtf8Document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+public class JemLimitsTest {
+
+    private static String html(JemUtf8Document document) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        document.html(output, false, true, true);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private static JemUtf8Document utf8(String input, JemLimits limits) {
+        return JemUtf8Document.parse(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)), limits);
+    }
+
+    private static void assertRejected(String input, JemLimits limits, JemLimits.Limit limit, int line)
+            throws Exception {
+        try {
+            JemDocument.parse(input, limits);
+            fail(input);
+        } catch (JemLimitException e) {
+            assertEquals(limit, e.limit());
+            assertEquals(limits.max(limit), e.max());
+            assertEquals(line, e.line());
+        }
+        try {
+            JemDocument.read(new StringReader(input), limits);
+            fail(input);
+        } catch (JemLimitException e) {
+            assertEquals(limit, e.limit());
+            assertEquals(line, e.line());
+        }
+        try {
+            utf8(input, limits);
+            fail(input);
+        } catch (JemLimitException e) {
+            assertEquals(limit, e.limit());
+            assertEquals(line, e.line());
+        }
+    }
+
+    // the document is parsed as if the input was the expected one
+    private static void assertTruncated(String input, JemLimits limits, String expected) throws Exception {
+        limits.truncate(true);
+        JemDocument document = JemDocument.parse(expected);
+        String html = orEmpty(document.html());
+        assertEquals(input, html, orEmpty(JemDocument.parse(input, limits).html()));
+        assertEquals(input, document.title(), JemDocument.parse(input, limits).title());
+        assertEquals(input, html, orEmpty(JemDocument.read(new StringReader(input), limits).html()));
+        assertEquals(input, html, html(utf8(input, limits)));
+    }
+
+    private static String orEmpty(String html) {
+        return html == null ? "" : html;
+    }
+
+    @org.junit.Test
+    public void parse_withinLimits() throws Exception {
+        JemLimits unbounded = new JemLimits();
+        for (int seed = 0; seed < 4; seed++) {
+            String input = new JemCorpusGenerator().seed(seed).nonAscii(0.2).generate(64 << 10);
+            JemDocument expected = JemDocument.parse(input);
+            JemLimits limits = new JemLimits().maxInput(input.length()).maxLineLength(input.length())
+                    .maxTokens(expected.size()).maxHeadings(expected.size()).maxBlockLines(expected.size())
+                    .maxOutput(expected.html().length());
+            for (JemLimits bounded : new JemLimits[]{unbounded, limits}) {
+                assertEquals(expected.html(), JemDocument.parse(input, bounded).html());
+                assertEquals(expected.html(), JemDocument.read(new StringReader(input), bounded).html());
+                assertEquals(expected.title(), JemDocument.parse(input, bounded).title());
+            }
+            assertEquals(expected.html(), html(utf8(input, unbounded)));
+        }
+    }
+
+    @org.junit.Test
+    public void parse_rejectsInputOverLimits() throws Exception {
+        assertRejected("# Title\ntext", new JemLimits().maxInput(10), JemLimits.Limit.INPUT, 0);
+        assertRejected("short\n" + "x".repeat(100) + "\nmore\n", new JemLimits().maxLineLength(50),
+                JemLimits.Limit.LINE_LENGTH, 2);
+        assertRejected("1\n2\n3\n4\n5\n", new JemLimits().maxTokens(3), JemLimits.Limit.TOKENS, 4);
+        assertRejected("# a\ntext\n## b\n### c\n", new JemLimits().maxHeadings(2), JemLimits.Limit.HEADINGS, 4);
+        assertRejected("text\n```\n1\n2\n3\n", new JemLimits().maxBlockLines(2), JemLimits.Limit.BLOCK_LINES, 5);
+        assertRejected("+++\n1\n+++\n+++\n1\n2\n", new JemLimits().maxBlockLines(1), JemLimits.Limit.BLOCK_LINES, 6);
+        // the limits themselves are fine
+        JemDocument.parse("# a\n```\n1\n2\n```\n## b\n", new JemLimits().maxInput(21).maxLineLength(4)
+                .maxTokens(6).maxHeadings(2).maxBlockLines(2));
+    }
+
+    @org.junit.Test
+    public void read_stopsAtLimit() throws Exception {
+        // more input than anyone should read, on a single line
+        class EndlessReader extends Reader {
+            long position = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                if (position > 1 << 20) {
+                    throw new IOException("read past the limit");
+                }
+                for (int i = 0; i < length; i++, position++) {
+                    buffer[offset + i] = 'x';
+                }
+                return length;
+            }
+
+            @Override
+            public void close() {
+            }
+        }
+        try {
+            JemDocument.read(new EndlessReader(), new JemLimits().maxLineLength(1000));
+            fail();
+        } catch (JemLimitException e) {
+            assertEquals(JemLimits.Limit.LINE_LENGTH, e.limit());
+            assertEquals("line is longer than 1000 at line 1", e.getMessage());
+        }
+        JemDocument truncated = JemDocument.read(new EndlessReader(),
+                new JemLimits().maxInput(100_000).maxLineLength(10).truncate(true));
+        assertEquals("<p>xxxxxxxxxx</p>\n", truncated.html());
+    }
+
+    @org.junit.Test
+    public void parse_truncates() throws Exception {
+        assertTruncated("# Title\nabcdef\n", new JemLimits().maxInput(10), "# Title\nab");
+        assertTruncated("# Title\n\n\n", new JemLimits().maxInput(9), "# Title\n\n");
+        assertTruncated("abc", new JemLimits().maxInput(0), "");
+        assertTruncated("a\uD83D\uDE00b", new JemLimits().maxInput(2), "a");
+        assertTruncated("abcdef\nxy\n* abcd", new JemLimits().maxLineLength(3), "abc\nxy\n* a");
+        assertTruncated("1\n2\n3\n4\n5\n", new JemLimits().maxTokens(3), "1\n2\n3\n");
+        assertTruncated("# a\ntext\n## b\nmore\n", new JemLimits().maxHeadings(1), "# a\ntext\n");
+        assertTruncated("```\n1\n2\n3\n```\nafter\n", new JemLimits().maxBlockLines(2), "```\n1\n2\n");
+    }
+
+    @org.junit.Test
+    public void parse_truncatesUtf8AtCharacter() throws Exception {
+        // "\u00E9" is two bytes and "\u20AC" three, a cut in the middle of either drops the character
+        JemLimits limits = new JemLimits().maxInput(4).truncate(true);
+        assertEquals("<p>ab</p>\n", html(utf8("ab\u00E9", limits.maxInput(3))));
+        assertEquals(JemDocument.parse("ab\u00E9").html(), html(utf8("ab\u00E9", limits.maxInput(4))));
+        assertEquals("<p>a</p>\n", html(utf8("a\u20ACb", limits.maxInput(3))));
+        assertEquals("<p>\u00E9</p>\n", html(utf8("\u00E9\u00E9\u00E9\n", limits.maxInput(100).maxLineLength(3))));
+    }
+
+    @org.junit.Test
+    public void render_limitsOutput() throws Exception {
+        String input = new JemCorpusGenerator().seed(5).nonAscii(0.2).generate(16 << 10);
+        String full = JemDocument.parse(input).html();
+        byte[] fullBytes = full.getBytes(StandardCharsets.UTF_8);
+
+        JemLimits limits = new JemLimits().maxOutput(1000);
+        try {
+            JemDocument.parse(input, limits).html();
+            fail();
+        } catch (JemLimitException e) {
+            assertEquals(JemLimits.Limit.OUTPUT, e.limit());
+        }
+        try {
+            html(utf8(input, limits));
+            fail();
+        } catch (JemLimitException e) {
+            assertEquals(JemLimits.Limit.OUTPUT, e.limit());
+        }
+        try {
+            JemDocument.parse(input, limits).page(new StringBuilder(), new StringBuilder());
+            fail();
+        } catch (JemLimitException e) {
+            assertEquals(JemLimits.Limit.OUTPUT, e.limit());
+        }
+
+        // the limits are copied, so later changes don't apply to the document
+        JemDocument document = JemDocument.parse(input, limits.truncate(true));
+        limits.truncate(false).maxOutput(10);
+        assertEquals(full.substring(0, 1000), document.html());
+        assertEquals(1000, document.markdown().length());
+        for (int max : new int[]{0, 1, 1000, 8191, 8192, 10_000}) {
+            byte[] output = html(utf8(input, new JemLimits().maxOutput(max).truncate(true)))
+                    .getBytes(StandardCharsets.UTF_8);
+            // cut at a character
+            assertTrue(output.length <= max && output.length > max - 4);
+            assertEquals(new String(fullBytes, 0, output.length, StandardCharsets.UTF_8),
+                    new String(output, StandardCharsets.UTF_8));
+        }
+    }
+
+    // what a parse comes to: the HTML, or the limit it stopped at
+    private static String outcome(Callable<String> parse) throws Exception {
+        try {
+            return parse.call();
+        } catch (JemLimitException e) {
+            return e.limit() + " at line " + e.line();
+        }
+    }
+
+    @org.junit.Test
+    public void parse_samePathsSameOutcome() throws Exception {
+        String[] pieces = {"\n", "\n", "\r\n", "\r", " ", "\t", "# ", "## ", "```", "+++", "* ", "=> ", "> ",
+                "a", "text", "aaaaaaaaaaaaaaaaaaaa"};
+        Random random = new Random(25);
+        for (int run = 0; run < 20_000; run++) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                builder.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String input = builder.toString();
+            // the input limit is left out, a Reader only sees it once it has read that far
+            JemLimits limits = new JemLimits().maxLineLength(random.nextInt(24)).maxTokens(random.nextInt(12))
+                    .maxHeadings(random.nextInt(4)).maxBlockLines(random.nextInt(4)).truncate(random.nextBoolean());
+            String parse = outcome(() -> orEmpty(JemDocument.parse(input, limits).html()));
+            assertEquals(input, parse, outcome(() -> orEmpty(JemDocument.read(new StringReader(input), limits).html())));
+            assertEquals(input, parse, outcome(() -> html(utf8(input, limits))));
+        }
+        JemLimits limits = new JemLimits().maxTokens(2).maxLineLength(16);
+        assertEquals("TOKENS at line 3", outcome(() -> JemDocument.read(
+                new StringReader(" \n\t\r\n\naaaaaaaaaaaaaaaaaaaa\r\ntext"), limits).html()));
+    }
+
+    @org.junit.Test
+    public void limits_rejectNegative() {
+        try {
+            new JemLimits().maxTokens(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("max tokens must not be negative", e.getMessage());
+        }
+    }
+}
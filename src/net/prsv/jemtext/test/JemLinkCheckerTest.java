@@ -0,0 +1,108 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemLinkChecker;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JemLinkCheckerTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    private static void write(Path root, String path, String content) throws Exception {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    @org.junit.Test
+    public void check_findsBrokenLinksAndOrphans() throws Exception {
+        Path root = folder.newFolder("capsule").toPath();
+        write(root, "index.gmi", "# Home\n"
+                + "=> posts/ Posts\n"
+                + "=> about.gmi About\n"
+                + "=> about.gmi#contact Contact\n"
+                + "=> gemini://example.org/ Elsewhere\n"
+                + "=> //example.org/page.gmi Elsewhere too\n"
+                + "=> mailto:someone@example.org Mail\n"
+                + "=> missing.gmi Missing\n"
+                + "```\n=> in-pre.gmi not a link\n```\n");
+        write(root, "about.gmi", "=> / Home\n=> images/me.png Me\n=> images/you.png You\n=> #top Top\n");
+        write(root, "posts/index.gmi", "=> first%20post.gmi First\n=> ../about.gmi?x=1 About\n=> ./../../index.gmi Home\n"
+                + "=> drafts Drafts\n");
+        write(root, "posts/first post.gmi", "=> /posts/ Back\n=> ../nothing/ Nowhere\n");
+        write(root, "posts/orphan.gmi", "=> ../index.gmi Home\n");
+        write(root, "images/me.png", "png");
+        Files.createDirectories(root.resolve("posts/drafts"));
+
+        JemLinkChecker.Result result = new JemLinkChecker().parallelism(2).check(root);
+        assertEquals(5, result.documents());
+        assertEquals(Arrays.asList("about.gmi", "index.gmi", "posts/first post.gmi", "posts/index.gmi",
+                "posts/orphan.gmi"), paths(result));
+        assertEquals(3, result.externalLinks());
+        assertEquals(15, result.links());
+
+        List<String> broken = new ArrayList<>();
+        for (JemLinkChecker.BrokenLink link : result.brokenLinks()) {
+            broken.add(link.document() + " " + link.url() + " " + link.target());
+        }
+        assertEquals(Arrays.asList(
+                "about.gmi images/you.png images/you.png",
+                "index.gmi missing.gmi missing.gmi",
+                "posts/first post.gmi ../nothing/ nothing/index.gmi",
+                "posts/index.gmi drafts posts/drafts/index.gmi"), broken);
+
+        int index = result.id("index.gmi");
+        int about = result.id("about.gmi");
+        int posts = result.id("posts/index.gmi");
+        int first = result.id("posts/first post.gmi");
+        assertEquals(-1, result.id("missing.gmi"));
+        // the two links to about.gmi count once
+        assertArrayEquals(new int[]{about, posts}, sorted(result.outbound(index)));
+        assertArrayEquals(new int[]{about, index, first}, sorted(result.outbound(posts)));
+        // the fragment link is a link of about.gmi to itself
+        assertArrayEquals(new int[]{about, index}, sorted(result.outbound(about)));
+        assertEquals(3, result.inbound(index));
+        assertEquals(2, result.inbound(about));
+        assertEquals(2, result.inbound(posts));
+        assertEquals(1, result.inbound(first));
+        assertEquals(Arrays.asList("posts/orphan.gmi"), result.orphans());
+        assertTrue(result.failures().isEmpty());
+    }
+
+    @org.junit.Test
+    public void check_generatedTree() throws Exception {
+        Path root = folder.newFolder("corpus").toPath();
+        new JemCorpusGenerator().seed(5).writeTree(root, 300, 2048);
+        JemLinkChecker.Result result = new JemLinkChecker().check(root);
+        assertEquals(300, result.documents());
+        assertTrue(result.links() + result.externalLinks() > 0);
+        JemLinkChecker.Result single = new JemLinkChecker().parallelism(1).check(root);
+        assertEquals(result.links(), single.links());
+        assertEquals(result.brokenLinks().size(), single.brokenLinks().size());
+        for (int i = 0; i < result.documents(); i++) {
+            assertArrayEquals(result.outbound(i), single.outbound(i));
+        }
+    }
+
+    private static List<String> paths(JemLinkChecker.Result result) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < result.documents(); i++) {
+            paths.add(result.path(i));
+        }
+        return paths;
+    }
+
+    private static int[] sorted(int[] ids) {
+        int[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,108 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemMetrics;
+import net.prsv.jemtext.JemMetricsAggregator;
+import net.prsv.jemtext.JemMetricsListener;
+import net.prsv.jemtext.JemToken;
+import net.prsv.jemtext.JemUtf8Document;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JemMetricsAggregatorTest {
+
+    private static final String INPUT = "# Title\n* a & b\n=> gemini://example.org <x>\n";
+
+    @org.junit.After
+    public void tearDown() {
+        JemMetrics.setListener(null);
+    }
+
+    @org.junit.Test
+    public void metrics_countParsesAndRenders() throws Exception {
+        JemMetricsAggregator metrics = new JemMetricsAggregator();
+        JemMetrics.setListener(metrics);
+
+        JemDocument document = JemDocument.parse(INPUT);
+        String html = document.html();
+        JemDocument.Page page = document.page();
+        ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+        JemUtf8Document.parse(ByteBuffer.wrap(INPUT.getBytes(StandardCharsets.UTF_8))).html(utf8, false, true, true);
+
+        assertEquals(2, metrics.parses());
+        assertEquals(6, metrics.lines());
+        assertEquals(2 * INPUT.length(), metrics.input());
+        assertEquals(2, metrics.tokens(JemToken.Type.JT_HEADING));
+        assertEquals(2, metrics.tokens(JemToken.Type.JT_LINK));
+        assertEquals(0, metrics.tokens(JemToken.Type.JT_PRE_TEXT));
+
+        // &, < and >
+        assertEquals(2, metrics.renders(JemMetrics.Format.HTML));
+        assertEquals(html.length() + utf8.size(), metrics.output(JemMetrics.Format.HTML));
+        assertEquals(6, metrics.escaped(JemMetrics.Format.HTML));
+        assertEquals(1, metrics.renders(JemMetrics.Format.PAGE));
+        assertEquals(page.html().length() + page.toc().length(), metrics.output(JemMetrics.Format.PAGE));
+        assertEquals(3, metrics.escaped(JemMetrics.Format.PAGE));
+        assertEquals(0, metrics.renders(JemMetrics.Format.MARKDOWN));
+
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(Long.valueOf(2), snapshot.get("parse.count"));
+        assertEquals(Long.valueOf(2), snapshot.get("parse.tokens.jt_link"));
+        assertEquals(Long.valueOf(6), snapshot.get("render.html.escaped"));
+        assertTrue(snapshot.containsKey("render.markdown.nanos.p99.9"));
+
+        metrics.reset();
+        assertEquals(0, metrics.parses());
+        assertEquals(0, metrics.snapshot().get("render.html.output").longValue());
+    }
+
+    @org.junit.Test
+    public void metrics_percentiles() {
+        JemMetricsAggregator metrics = new JemMetricsAggregator();
+        JemMetrics.setListener(metrics);
+        String input = new JemCorpusGenerator().seed(5).generate(16 << 10);
+        for (int i = 0; i < 200; i++) {
+            JemDocument.parse(input).markdown();
+        }
+
+        assertEquals(200, metrics.parses());
+        long p50 = metrics.parseNanos(50);
+        long p99 = metrics.parseNanos(99);
+        long max = metrics.snapshot().get("parse.nanos.max");
+        assertTrue(p50 > 0);
+        assertTrue(p50 <= p99);
+        assertTrue(p99 <= max);
+        assertEquals(max, metrics.parseNanos(100));
+        assertTrue(metrics.renderNanos(JemMetrics.Format.MARKDOWN, 90) > 0);
+    }
+
+    @org.junit.Test
+    public void metrics_offWithoutListener() {
+        AtomicInteger calls = new AtomicInteger();
+        JemMetricsListener listener = new JemMetricsListener() {
+            @Override
+            public void parsed(JemMetrics.Parse parse) {
+                calls.incrementAndGet();
+            }
+
+            @Override
+            public void rendered(JemMetrics.Render render) {
+                calls.incrementAndGet();
+            }
+        };
+        JemMetrics.setListener(listener);
+        JemDocument.parse(INPUT).gemini();
+        assertEquals(2, calls.get());
+
+        JemMetrics.setListener(null);
+        JemDocument.parse(INPUT).gemini();
+        assertEquals(2, calls.get());
+    }
+}
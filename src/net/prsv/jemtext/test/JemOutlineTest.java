@@ -0,0 +1,116 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemOutline;
+import net.prsv.jemtext.JemToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JemOutlineTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    private static void assertSameOutline(JemDocument document, JemOutline outline) {
+        assertEquals(document.title(), outline.title());
+        assertEquals(document.toc(), outline.toc());
+        List<JemToken.JemHeading> headings = outline.headings();
+        List<JemToken.JemLink> links = outline.links();
+        int heading = 0;
+        int link = 0;
+        for (JemToken token : document.tokens()) {
+            if (token.type == JemToken.Type.JT_HEADING) {
+                JemToken.JemHeading expected = token.heading;
+                JemToken.JemHeading actual = headings.get(heading++);
+                assertEquals(expected.text, actual.text);
+                assertEquals(expected.level, actual.level);
+                assertEquals(expected.count, actual.count);
+            } else if (token.type == JemToken.Type.JT_LINK) {
+                JemToken.JemLink actual = links.get(link++);
+                assertEquals(token.link.url, actual.url);
+                assertEquals(token.link.altText, actual.altText);
+            }
+        }
+        assertEquals(heading, headings.size());
+        assertEquals(link, links.size());
+    }
+
+    @org.junit.Test
+    public void scan_sameAsParse() throws Exception {
+        String[] inputs = {
+                "",
+                "plain text only\n",
+                "## Not the title\n# Title\n# Second\n=> gemini://example.org Example\n=>\n",
+                "```\n# Not a heading\n=> not/a/link\n```\n+++\n# Neither\n+++\n# Title\n",
+                "```unterminated\n# inside\n",
+                "#Not a heading\n#\tTab title  \n=>   url   alt text  \n=> image.png\n",
+        };
+        for (String input : inputs) {
+            JemDocument document = JemDocument.parse(input);
+            assertSameOutline(document, JemOutline.scan(input));
+            assertSameOutline(document, JemOutline.read(new StringReader(input)));
+            assertEquals(document.title(), JemOutline.scanTitle(input));
+            assertEquals(document.title(), JemOutline.readTitle(new StringReader(input)));
+        }
+        for (int seed = 0; seed < 8; seed++) {
+            String input = new JemCorpusGenerator().seed(seed).nonAscii(0.2).generate(64 << 10);
+            JemDocument document = JemDocument.parse(input);
+            assertSameOutline(document, JemOutline.scan(input));
+            assertSameOutline(document, JemOutline.read(new StringReader(input)));
+            assertEquals(document.title(), JemOutline.scanTitle(input));
+            assertEquals(document.title(), JemOutline.readTitle(new StringReader(input)));
+        }
+    }
+
+    @org.junit.Test
+    public void scan_nullInput() {
+        JemOutline outline = JemOutline.scan(null);
+        assertNull(outline.title());
+        assertNull(outline.toc());
+        assertTrue(outline.headings().isEmpty());
+        assertTrue(outline.links().isEmpty());
+        assertNull(JemOutline.scanTitle(null));
+    }
+
+    @org.junit.Test
+    public void readTitle_stopsAtTitle() throws Exception {
+        // a title, followed by more input than anyone should read for it
+        Reader input = new Reader() {
+            private final String head = "```\n# Not the title\n```\n## Section\n# The title\n";
+            private long position = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                if (position > 1 << 20) {
+                    throw new IOException("read past the title");
+                }
+                for (int i = 0; i < length; i++, position++) {
+                    buffer[offset + i] = position < head.length() ? head.charAt((int) position) : 'x';
+                }
+                return length;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals("The title", JemOutline.readTitle(input));
+    }
+
+    @org.junit.Test
+    public void read_path() throws Exception {
+        String input = new JemCorpusGenerator().seed(3).generate(16 << 10);
+        Path file = folder.newFile("page.gmi").toPath();
+        Files.writeString(file, input);
+        assertSameOutline(JemDocument.parse(input), JemOutline.read(file));
+        assertEquals(JemDocument.parse(input).title(), JemOutline.readTitle(file));
+    }
+}
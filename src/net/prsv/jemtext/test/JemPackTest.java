@@ -0,0 +1,74 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemPack;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JemPackTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    @org.junit.Test
+    public void pack_randomAccess() throws Exception {
+        Path file = folder.newFile("corpus.jemp").toPath();
+        List<JemDocument> documents = new ArrayList<>();
+        try (JemPack.Writer writer = JemPack.create(file)) {
+            for (int i = 0; i < 50; i++) {
+                JemDocument document = JemDocument.parse(new JemCorpusGenerator().seed(i).generate(1 + i * 300));
+                documents.add(document);
+                writer.add("posts/" + i + ".gmi", document);
+            }
+            writer.add("empty", JemDocument.parse(""));
+            assertEquals(51, writer.size());
+        }
+
+        JemPack pack = JemPack.open(file);
+        assertEquals(51, pack.size());
+        for (int i = 49; i >= 0; i -= 7) {
+            assertEquals("posts/" + i + ".gmi", pack.name(i));
+            JemBinaryTest.assertSameDocument(documents.get(i), pack.document(i));
+        }
+        JemBinaryTest.assertSameDocument(documents.get(3), pack.document("posts/3.gmi"));
+        assertEquals(50, pack.indexOf("empty"));
+        JemBinaryTest.assertSameDocument(JemDocument.parse(""), pack.document(50));
+        assertNull(pack.document("missing"));
+        assertEquals(-1, pack.indexOf("missing"));
+    }
+
+    @org.junit.Test
+    public void open_rejectsOtherFiles() throws Exception {
+        Path file = folder.newFile("other.jemp").toPath();
+        Files.writeString(file, "# not a pack, but long enough to have a header and a trailer\n");
+        try {
+            JemPack.open(file);
+            fail();
+        } catch (IOException e) {
+            assertEquals("not a JemText pack", e.getMessage());
+        }
+    }
+
+    @org.junit.Test
+    public void open_rejectsFilesOver2Gb() throws Exception {
+        Path file = folder.newFile("large.jemp").toPath();
+        // a sparse file, nothing is written
+        try (RandomAccessFile large = new RandomAccessFile(file.toFile(), "rw")) {
+            large.setLength(Integer.MAX_VALUE + 1L);
+        }
+        try {
+            JemPack.open(file);
+            fail();
+        } catch (IOException e) {
+            assertEquals("unsupported JemText pack: larger than 2 GB", e.getMessage());
+        }
+    }
+}
@@ -1,7 +1,20 @@
 package net.prsv.jemtext.test;
 
+import net.prsv.jemtext.JemDocument;
 import net.prsv.jemtext.JemParser;
 
+import com.sun.management.ThreadMXBean;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.*;
 
 public class JemParserTest {
@@ -254,4 +267,129 @@ public class JemParserTest {
         assertEquals(expectedOutput, jemParser.markdown());
     }
 
-}
\ No newline at end of file
+    @org.junit.Test
+    public void read_inputStream() throws Exception {
+        String testInput = "# Streamed title\r\n" +
+                "```\r\n" +
+                "# Not a heading\r\n" +
+                "```\r\n" +
+                "* List item\r\n\r\n\r\n";
+        jemParser.parse(testInput);
+        String expectedOutput = jemParser.html();
+        jemParser.read(new ByteArrayInputStream(testInput.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        assertEquals(expectedOutput, jemParser.html());
+        assertEquals("Streamed title", jemParser.title());
+    }
+
+    @org.junit.Test
+    public void html_appendable() throws Exception {
+        String testInput = "# Heading\n" +
+                "=> https://example.org/cat.jpg A cat\n" +
+                "* List item\n" +
+                "> Quote & more\n";
+        jemParser.parse(testInput);
+        StringWriter html = new StringWriter();
+        jemParser.html(html, false, true, true);
+        assertEquals(jemParser.html(), html.toString());
+        StringWriter toc = new StringWriter();
+        jemParser.toc(toc);
+        assertEquals(jemParser.toc(), toc.toString());
+    }
+
+    @org.junit.Test
+    public void page_matchesSeparateRenders() throws Exception {
+        String testInput = "# Title & more\n" +
+                "Text\n" +
+                "## Section <2>\n" +
+                "```\n" +
+                "# not a heading\n" +
+                "```\n" +
+                "### Sub\n";
+        jemParser.parse(testInput);
+        JemDocument.Page page = jemParser.page(true, false, false);
+        assertEquals(jemParser.html(true, false, false), page.html());
+        assertEquals(jemParser.toc(), page.toc());
+        assertEquals(jemParser.title(), page.title());
+        StringWriter body = new StringWriter();
+        StringWriter toc = new StringWriter();
+        jemParser.page(body, toc);
+        assertEquals(jemParser.html(), body.toString());
+        assertEquals(jemParser.toc(), toc.toString());
+        jemParser.parse(null);
+        assertNull(jemParser.page().html());
+        assertNull(jemParser.page().toc());
+    }
+
+    @org.junit.Test
+    public void render_doesNotAllocatePerToken() throws Exception {
+        StringBuilder testInput = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            testInput.append("# Heading ").append(i).append('\n')
+                    .append("Text with <markup> & \u00DCn\u00EFc\u00F6d\u00E9\n")
+                    .append("=> https://example.org/cat.png A cat\n")
+                    .append("=> gemini://example.org/ A link\n")
+                    .append("* Item\n\n* Another item\n")
+                    .append("> Quote\n")
+                    .append("```alt\ncode `x` < y\n```\n")
+                    .append("+++\n<b>pass-through</b>\n+++\n")
+                    .append("===\n");
+        }
+        jemParser.parse(testInput.toString());
+        // the allocation counters are an extension of the JDK, the test is skipped on a runtime without them
+        Object threads = ManagementFactory.getThreadMXBean();
+        org.junit.Assume.assumeTrue(threads instanceof ThreadMXBean);
+        ThreadMXBean allocations = (ThreadMXBean) threads;
+        org.junit.Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported()
+                && allocations.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+        StringBuilder output = new StringBuilder(1 << 20);
+
+        long allocated = 0;
+        for (int round = 0; round < 20; round++) {
+            long before = allocations.getThreadAllocatedBytes(thread);
+            output.setLength(0);
+            jemParser.html(output, false, true, true);
+            output.setLength(0);
+            jemParser.html(output, true, false, false);
+            output.setLength(0);
+            jemParser.markdown(output);
+            output.setLength(0);
+            jemParser.gemini(output);
+            output.setLength(0);
+            jemParser.toc(output);
+            long after = allocations.getThreadAllocatedBytes(thread);
+            // the first rounds warm up
+            if (round >= 10) {
+                allocated += after - before;
+            }
+        }
+        // rendering writes constant fragments and escaped text straight into the output, so the only
+        // allocations left are incidental; a formatted String per token would be kilobytes per round
+        int tokens = jemParser.tokens().size();
+        assertTrue("allocated " + allocated + " bytes for 10 rounds of " + tokens + " tokens", allocated < tokens);
+    }
+
+    @org.junit.Test
+    public void document_concurrentRender() throws Exception {
+        StringBuilder testInput = new StringBuilder("# Shared document\n");
+        for (int i = 0; i < 500; i++) {
+            testInput.append("* Item ").append(i).append(" <&>\n");
+        }
+        JemDocument document = JemDocument.parse(testInput.toString());
+        String expectedOutput = document.html();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> document.html()));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expectedOutput, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("Shared document", document.title());
+    }
+
+}
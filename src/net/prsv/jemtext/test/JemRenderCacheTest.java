@@ -0,0 +1,84 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemRenderCache;
+
+import static org.junit.Assert.*;
+
+public class JemRenderCacheTest {
+
+    @org.junit.Test
+    public void render_cachesByContentAndOptions() {
+        JemRenderCache cache = new JemRenderCache(1 << 20);
+        String source = "# Title\n=> https://example.org/cat.png A cat\n";
+        JemDocument document = JemDocument.parse(source);
+
+        assertEquals(document.html(), cache.html(source));
+        assertEquals(document.html(), cache.html(new String(source.toCharArray())));
+        assertEquals(document.html(true, false, false), cache.html(source, true, false, false));
+        assertEquals(document.markdown(), cache.markdown(source));
+        assertEquals(document.gemini(), cache.gemini(source));
+        assertEquals(document.toc(), cache.toc(source));
+        assertNull(cache.html(null));
+
+        assertEquals(1, cache.hits());
+        assertEquals(5, cache.misses());
+        assertEquals(5, cache.entries());
+    }
+
+    @org.junit.Test
+    public void render_cachesEmptyOutput() {
+        JemRenderCache cache = new JemRenderCache(1 << 20);
+        for (String source : new String[]{"", "\n", "\n\n\n", "\r\n"}) {
+            JemDocument document = JemDocument.parse(source);
+            for (int i = 0; i < 2; i++) {
+                assertEquals(document.html(), cache.html(source));
+                assertEquals(document.markdown(), cache.markdown(source));
+                assertEquals(document.gemini(), cache.gemini(source));
+                assertEquals(document.toc(), cache.toc(source));
+            }
+        }
+        // whitespace-only lines are a document, which renders to something
+        assertEquals(JemDocument.parse("  \t\n \n").html(), cache.html("  \t\n \n"));
+        assertEquals(JemDocument.parse("  \t\n \n").html(), cache.html("  \t\n \n"));
+        assertEquals(17, cache.hits());
+    }
+
+    @org.junit.Test
+    public void render_cachesLargeEntries() {
+        // a cache of 1 MB is a single segment, so a page of a few hundred KB is cached
+        JemRenderCache cache = new JemRenderCache(1 << 20);
+        String large = "Some text that is long enough\n".repeat(4000);
+        assertEquals(JemDocument.parse(large).html(), cache.html(large));
+        assertEquals(JemDocument.parse(large).html(), cache.html(large));
+        assertEquals(1, cache.hits());
+        assertEquals(0, cache.rejected());
+
+        // larger than the whole cache
+        JemRenderCache small = new JemRenderCache(64 * 1024);
+        assertEquals(64 * 1024, small.maxEntryBytes());
+        assertEquals(JemDocument.parse(large).html(), small.html(large));
+        assertEquals(0, small.entries());
+        assertEquals(1, small.rejected());
+
+        // 16 segments of 1 MB
+        assertEquals(1 << 20, new JemRenderCache(16 << 20).maxEntryBytes());
+        assertEquals(2 << 20, new JemRenderCache(32 << 20).maxEntryBytes());
+    }
+
+    @org.junit.Test
+    public void render_evictsLeastRecentlyUsed() {
+        JemRenderCache tiny = new JemRenderCache(64);
+        tiny.html("Text\n");
+        assertEquals(0, tiny.entries());
+        assertEquals(1, tiny.rejected());
+
+        JemRenderCache cache = new JemRenderCache(16 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            cache.html("Line " + i + "\n");
+        }
+        assertTrue(cache.evictions() > 0);
+        assertTrue(cache.bytes() <= cache.maxBytes());
+        assertEquals(1000, cache.entries() + cache.evictions());
+    }
+}
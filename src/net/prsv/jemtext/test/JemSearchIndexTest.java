@@ -0,0 +1,152 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemCorpusGenerator;
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemIndexer;
+import net.prsv.jemtext.JemSearchIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JemSearchIndexTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    private static final List<String> NAMES = Arrays.asList("cats.gmi", "dogs.gmi", "code.gmi", "caf\u00E9.gmi");
+    private static final List<String> INPUTS = Arrays.asList(
+            "# Cats\nCats are small.\n## Food\nCats eat fish, not bread.\n=> fish.gmi Fish recipes\n",
+            "# Dogs\nDogs like cats sometimes.\n* Dogs eat bread\n> bread is not for dogs\n=> https://example.org/cats\n",
+            "# Code\n```bread\nfish = cats()\n```\n+++\n<b>bread</b>\n+++\nNothing else here.\n",
+            "# Caf\u00E9\nCAF\u00C9 au lait, 2 \u20AC\n## Menu\n\u00C7a va\n");
+
+    private static List<JemDocument> documents() {
+        List<JemDocument> documents = new ArrayList<>();
+        for (String input : INPUTS) {
+            documents.add(JemDocument.parse(input));
+        }
+        return documents;
+    }
+
+    private static List<String> names(List<JemSearchIndex.Hit> hits) {
+        List<String> names = new ArrayList<>();
+        for (JemSearchIndex.Hit hit : hits) {
+            names.add(hit.name());
+        }
+        return names;
+    }
+
+    @org.junit.Test
+    public void search_findsDocumentsWithAllTerms() throws Exception {
+        JemSearchIndex index = new JemIndexer().index(NAMES, documents());
+        assertEquals(4, index.documents());
+        assertEquals("dogs.gmi", index.name(1));
+
+        // the heading makes cats.gmi the better match
+        List<JemSearchIndex.Hit> cats = index.search("cats", 10);
+        assertEquals(Arrays.asList("cats.gmi", "dogs.gmi"), names(cats));
+        assertEquals(4 + 1 + 1, cats.get(0).score());
+        assertEquals(1, cats.get(1).score());
+        assertEquals(Arrays.asList("cats.gmi"), names(index.search("Cats FISH", 10)));
+        assertEquals(Arrays.asList("dogs.gmi", "cats.gmi"), names(index.search("bread", 10)));
+        assertEquals(Arrays.asList("dogs.gmi"), names(index.search("bread", 1)));
+        assertTrue(index.search("cats unicorns", 10).isEmpty());
+        assertTrue(index.search("  ...  ", 10).isEmpty());
+        // link alt text, but not the URL
+        assertEquals(Arrays.asList("cats.gmi"), names(index.search("recipes", 10)));
+        assertEquals(0, index.documentFrequency("https"));
+        // pre-formatted and pass-through text are left out
+        assertEquals(0, index.documentFrequency("b"));
+        assertEquals(1, index.search("nothing", 10).size());
+        assertEquals(Arrays.asList("caf\u00E9.gmi"), names(index.search("caf\u00E9 \u00E7a", 10)));
+    }
+
+    @org.junit.Test
+    public void search_returnsAnchors() throws Exception {
+        List<JemDocument> documents = documents();
+        JemSearchIndex index = new JemIndexer().index(NAMES, documents);
+        JemSearchIndex.Hit hit = index.search("fish", 10).get(0);
+        assertEquals(Arrays.asList("jt-heading-2"), hit.anchors());
+        assertTrue(documents.get(0).html().contains("id=\"jt-heading-2\""));
+        // the sections both terms are in
+        assertEquals(Arrays.asList("jt-heading-1"), index.search("cats small", 10).get(0).anchors());
+        // or, if there are none, every section either is in
+        assertEquals(Arrays.asList("jt-heading-1", "jt-heading-2"), index.search("small food", 10).get(0).anchors());
+        assertEquals("cats.gmi#jt-heading-2 (2)", hit.toString());
+
+        List<String> anchors = new ArrayList<>();
+        StringBuilder input = new StringBuilder("text before any heading\n");
+        for (int i = 1; i <= 40; i++) {
+            input.append("## Section ").append(i).append('\n').append(i % 17 == 0 ? "needle\n" : "hay\n");
+            anchors.add(i % 17 == 0 ? "jt-heading-" + Integer.toHexString(i) : null);
+        }
+        anchors.removeIf(line -> line == null);
+        JemDocument document = JemDocument.parse(input.toString());
+        JemSearchIndex sections = new JemIndexer().index(List.of("long"), List.of(document));
+        assertEquals(anchors, sections.search("needle", 1).get(0).anchors());
+        for (String anchor : anchors) {
+            assertTrue(document.html().contains("id=\"" + anchor + "\""));
+        }
+        assertTrue(sections.search("before", 1).get(0).anchors().isEmpty());
+    }
+
+    @org.junit.Test
+    public void indexer_options() throws Exception {
+        JemSearchIndex index = new JemIndexer().preformatted(true).headingWeight(1).index(NAMES, documents());
+        assertEquals(Arrays.asList("cats.gmi", "dogs.gmi", "code.gmi"), names(index.search("cats", 10)));
+        assertEquals(1, index.documentFrequency("b"));
+        assertEquals(3, index.search("cats", 10).get(0).score());
+    }
+
+    @org.junit.Test
+    public void index_isIndependentOfParallelism() throws Exception {
+        List<String> names = new ArrayList<>();
+        List<JemDocument> documents = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            names.add("page-" + i);
+            documents.add(JemDocument.parse(new JemCorpusGenerator().seed(i).nonAscii(0.1).generate(1024)));
+        }
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        new JemIndexer().parallelism(4).index(names, documents).write(parallel);
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        new JemIndexer().parallelism(1).index(names, documents).write(sequential);
+        assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+    }
+
+    @org.junit.Test
+    public void open_mapsWrittenIndex() throws Exception {
+        Path root = folder.newFolder("capsule").toPath();
+        new JemCorpusGenerator().seed(9).writeTree(root, 40, 4096);
+        Files.writeString(root.resolve("d00/zebra.gmi"), "# Zebra\nstripes\n");
+        JemSearchIndex built = new JemIndexer().index(root);
+        Path file = folder.newFile("index.jems").toPath();
+        built.write(file);
+
+        JemSearchIndex index = JemSearchIndex.open(file);
+        assertEquals(41, index.documents());
+        assertEquals(built.terms(), index.terms());
+        assertEquals(Arrays.asList("d00/zebra.gmi"), names(index.search("zebra stripes", 10)));
+        for (String query : new String[]{"the", "link", "text", "zebra"}) {
+            assertEquals(names(built.search(query, 100)), names(index.search(query, 100)));
+        }
+    }
+
+    @org.junit.Test
+    public void open_rejectsOtherFiles() throws Exception {
+        Path file = folder.newFile("other.jems").toPath();
+        Files.writeString(file, "# not an index, but long enough to have a header and a trailer\n");
+        try {
+            JemSearchIndex.open(file);
+            fail();
+        } catch (IOException e) {
+            assertEquals("not a JemText search index", e.getMessage());
+        }
+    }
+}
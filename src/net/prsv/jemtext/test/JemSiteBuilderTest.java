@@ -0,0 +1,116 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemParser;
+import net.prsv.jemtext.JemSiteBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class JemSiteBuilderTest {
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    private static String html(String input) {
+        JemParser jemParser = new JemParser();
+        jemParser.parse(input);
+        return jemParser.html();
+    }
+
+    // moves the modification time into the past, so that the file isn't hashed again by every build
+    private static void age(Path file) throws Exception {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+    }
+
+    @org.junit.Test
+    public void build_convertsOnlyChanges() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Files.createDirectories(source.resolve("posts"));
+        Path index = source.resolve("index.gmi");
+        Path post = source.resolve("posts/first.gmi");
+        Files.writeString(index, "# Index\n");
+        Files.writeString(post, "# First\n");
+        age(index);
+        age(post);
+
+        JemSiteBuilder builder = new JemSiteBuilder().parallelism(2);
+        JemSiteBuilder.Result result = builder.build(source, target);
+        assertEquals(2, result.added());
+        assertEquals(0, result.unchanged());
+        assertEquals(html("# First\n"), Files.readString(target.resolve("posts/first.html"), StandardCharsets.UTF_8));
+        assertTrue(Files.exists(target.resolve(JemSiteBuilder.MANIFEST)));
+
+        result = builder.build(source, target);
+        assertEquals(0, result.added());
+        assertEquals(0, result.changed());
+        assertEquals(2, result.unchanged());
+
+        // touched but not changed, changed, added
+        Files.setLastModifiedTime(index, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+        Files.writeString(post, "# First, edited\n");
+        age(post);
+        Files.writeString(source.resolve("posts/second.gmi"), "# Second\n");
+        result = builder.build(source, target);
+        assertEquals(1, result.added());
+        assertEquals(1, result.changed());
+        assertEquals(1, result.unchanged());
+        assertEquals(html("# First, edited\n"), Files.readString(target.resolve("posts/first.html"),
+                StandardCharsets.UTF_8));
+
+        // removed
+        Files.delete(post);
+        Files.delete(source.resolve("posts/second.gmi"));
+        result = builder.build(source, target);
+        assertEquals(2, result.removed());
+        assertFalse(Files.exists(target.resolve("posts")));
+        assertTrue(Files.exists(target.resolve("index.html")));
+    }
+
+    @org.junit.Test
+    public void build_rebuildsOnNewOptionsAndMissingOutput() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Path index = source.resolve("index.gmi");
+        Files.writeString(index, "=> cat.png A cat\n");
+        age(index);
+        new JemSiteBuilder().build(source, target);
+
+        JemSiteBuilder.Result result = new JemSiteBuilder().html(false).markdown(true).build(source, target);
+        assertEquals(1, result.changed());
+        assertTrue(Files.exists(target.resolve("index.md")));
+        assertFalse(Files.exists(target.resolve("index.html")));
+
+        Files.delete(target.resolve("index.md"));
+        result = new JemSiteBuilder().html(false).markdown(true).build(source, target);
+        assertEquals(1, result.changed());
+        assertTrue(Files.exists(target.resolve("index.md")));
+    }
+
+    @org.junit.Test
+    public void build_removesOutputsOfFailedFiles() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Path index = source.resolve("index.gmi");
+        Files.writeString(index, "# Index\n");
+        age(index);
+        new JemSiteBuilder().build(source, target);
+        assertTrue(Files.exists(target.resolve("index.html")));
+
+        // the Markdown output cannot be written, because a directory is in the way
+        Files.createDirectories(target.resolve("index.md"));
+        JemSiteBuilder.Result result = new JemSiteBuilder().markdown(true).build(source, target);
+        assertEquals(1, result.failures().size());
+
+        // the failed file is still known, its outputs go with it
+        Files.delete(index);
+        result = new JemSiteBuilder().markdown(true).build(source, target);
+        assertEquals(1, result.removed());
+        assertFalse(Files.exists(target.resolve("index.html")));
+        assertFalse(Files.exists(target.resolve("index.md")));
+    }
+}
@@ -0,0 +1,236 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemParser;
+import net.prsv.jemtext.JemToken;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+// differential test of the hand-written line classifier against the original regular expressions
+public class JemTokenizerTest {
+
+    private static final Pattern LINK_PATTERN = Pattern.compile("^=>\\s*(\\S+)\\s*(.*)$");
+    private static final Pattern H1_PATTERN = Pattern.compile("^#\\s+(.*)$");
+    private static final Pattern H2_PATTERN = Pattern.compile("^##\\s+(.*)$");
+    private static final Pattern H3_PATTERN = Pattern.compile("^###\\s+(.*)$");
+    private static final Pattern HR_PATTERN = Pattern.compile("^===$");
+    private static final Pattern LI_PATTERN = Pattern.compile("^\\*\\s+(.*)$");
+    private static final Pattern PRE_PATTERN = Pattern.compile("^```(.*)$");
+    private static final Pattern PASSTHRU_PATTERN = Pattern.compile("^\\+\\+\\+$");
+    private static final Pattern BLOCKQUOTE_PATTERN = Pattern.compile("^>\\s*(.*)$");
+
+    private static final String[] MARKERS = {"", "", "", "=>", "=> ", "=", "==", "===", "====", "#", "# ", "##", "## ",
+            "###", "### ", "####", "#### ", "*", "* ", "**", ">", "> ", ">>", "```", "``", "````", "+++", "++", "++++"};
+    private static final String[] SPACES = {" ", "  ", "\t", "\u000B", "\f", "\u00A0", "\u2003", "\u3000", "\u001C", "\u200B"};
+    private static final String[] WORDS = {"word", "gemini://example.org/", "https://example.org/cat.jpg", "\u00DCn\u00EFc\u00F6d\u00E9",
+            "&<>\"'", "=>", "#", "*", ">", "```", "+++", "===", "\u0000", "\uD83D\uDE00", "a"};
+
+    @org.junit.Test
+    public void parse_matchesRegexClassifier() throws Exception {
+        Random random = new Random(42);
+        JemParser jemParser = new JemParser();
+        for (int doc = 0; doc < 2000; doc++) {
+            String input = randomDocument(random);
+            List<JemToken> expected = new ArrayList<>();
+            String expectedTitle = referenceParse(input, expected);
+            jemParser.parse(input);
+            List<JemToken> actual = jemParser.tokens();
+            assertEquals(input, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertTokenEquals(input, expected.get(i), actual.get(i));
+            }
+            assertEquals(input, expectedTitle, jemParser.title());
+        }
+    }
+
+    @org.junit.Test
+    public void parseReader_matchesRegexClassifier() throws Exception {
+        Random random = new Random(7);
+        JemParser jemParser = new JemParser();
+        for (int doc = 0; doc < 2000; doc++) {
+            String input = randomDocument(random);
+            List<JemToken> expected = new ArrayList<>();
+            String expectedTitle = referenceParse(input, expected);
+            // hand out one character per read, so that \r\n pairs are split between reads
+            jemParser.read(new FilterReader(new StringReader(input)) {
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    return super.read(buffer, offset, Math.min(length, 1));
+                }
+            });
+            List<JemToken> actual = jemParser.tokens();
+            assertEquals(input, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertTokenEquals(input, expected.get(i), actual.get(i));
+            }
+            assertEquals(input, expectedTitle, jemParser.title());
+        }
+    }
+
+    @org.junit.Test
+    public void parseParallel_matchesSequential() throws Exception {
+        Random random = new Random(3);
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            for (int round = 0; round < 3; round++) {
+                // large enough to be split into several chunks
+                StringBuilder input = new StringBuilder();
+                while (input.length() < 3 * 1024 * 1024) {
+                    input.append(randomDocument(random));
+                }
+                JemDocument expected = JemDocument.parse(input.toString());
+                JemDocument actual = JemDocument.parseParallel(input.toString(), pool);
+                assertEquals(expected.size(), actual.size());
+                List<JemToken> expectedTokens = expected.tokens();
+                List<JemToken> actualTokens = actual.tokens();
+                for (int i = 0; i < expectedTokens.size(); i++) {
+                    assertTokenEquals("token " + i, expectedTokens.get(i), actualTokens.get(i));
+                }
+                assertEquals(expected.title(), actual.title());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void assertTokenEquals(String message, JemToken expected, JemToken actual) {
+        assertEquals(message, expected.type, actual.type);
+        assertEquals(message, expected.text, actual.text);
+        assertEquals(message, expected.heading.text, actual.heading.text);
+        assertEquals(message, expected.heading.level, actual.heading.level);
+        assertEquals(message, expected.heading.count, actual.heading.count);
+        assertEquals(message, expected.link.url, actual.link.url);
+        assertEquals(message, expected.link.altText, actual.link.altText);
+    }
+
+    static String randomDocument(Random random) {
+        StringBuilder document = new StringBuilder();
+        int lines = random.nextInt(30);
+        for (int i = 0; i < lines; i++) {
+            if (random.nextInt(4) == 0) {
+                document.append(SPACES[random.nextInt(SPACES.length)]);
+            }
+            document.append(MARKERS[random.nextInt(MARKERS.length)]);
+            int words = random.nextInt(5);
+            for (int w = 0; w < words; w++) {
+                if (random.nextBoolean()) {
+                    document.append(SPACES[random.nextInt(SPACES.length)]);
+                }
+                document.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (random.nextInt(4) == 0) {
+                document.append(SPACES[random.nextInt(SPACES.length)]);
+            }
+            switch (random.nextInt(6)) {
+                case 0:
+                    document.append("\r\n");
+                    break;
+                case 1:
+                    document.append('\r');
+                    break;
+                case 2:
+                    document.append('\u2028');
+                    break;
+                default:
+                    document.append('\n');
+            }
+        }
+        return document.toString();
+    }
+
+    // the original regular expression based tokenizer, kept as the reference implementation
+    static String referenceParse(String input, List<JemToken> tokenStream) {
+        String title = null;
+        String[] lines = input.split("\\R");
+
+        boolean pre = false;
+        boolean passthru = false;
+        int headingCount = 0;
+
+        for (String line : lines) {
+            String strippedLine = line.strip();
+            Matcher linkMatcher = LINK_PATTERN.matcher(strippedLine);
+            Matcher h1Matcher = H1_PATTERN.matcher(strippedLine);
+            Matcher h2Matcher = H2_PATTERN.matcher(strippedLine);
+            Matcher h3Matcher = H3_PATTERN.matcher(strippedLine);
+            Matcher hrMatcher = HR_PATTERN.matcher(strippedLine);
+            Matcher liMatcher = LI_PATTERN.matcher(strippedLine);
+            Matcher preMatcher = PRE_PATTERN.matcher(strippedLine);
+            Matcher passthruMatcher = PASSTHRU_PATTERN.matcher(strippedLine);
+            Matcher bqMatcher = BLOCKQUOTE_PATTERN.matcher(strippedLine);
+
+            JemToken token = new JemToken();
+
+            if(preMatcher.find()) {
+                pre = !pre;
+                if (pre) {
+                    token.type = JemToken.Type.JT_PRE_BEGIN;
+                    if (preMatcher.group(1).length() > 0)
+                        token.text = preMatcher.group(1);
+                }
+                else
+                    token.type = JemToken.Type.JT_PRE_END;
+            } else if (passthruMatcher.find()) {
+                passthru = !passthru;
+                if (passthru)
+                    token.type = JemToken.Type.JT_PASSTHRU_BEGIN;
+                else
+                    token.type = JemToken.Type.JT_PASSTHRU_END;
+            } else if(pre) {
+                token.type = JemToken.Type.JT_PRE_TEXT;
+                token.text = line;
+            } else if(passthru) {
+                token.type = JemToken.Type.JT_PASSTHRU_TEXT;
+                token.text = line;
+            } else if (linkMatcher.find()) {
+                token.type = JemToken.Type.JT_LINK;
+                token.link.url = linkMatcher.group(1);
+                token.link.altText = linkMatcher.group(2).length() > 0 ? linkMatcher.group(2) : token.link.url;
+            } else if (h1Matcher.find()) {
+                token.type = JemToken.Type.JT_HEADING;
+                headingCount++;
+                token.heading.count = headingCount;
+                token.heading.level = 1;
+                token.heading.text = h1Matcher.group(1);
+                if (title == null) {
+                    title = token.heading.text;
+                }
+            } else if (h2Matcher.find()) {
+                token.type = JemToken.Type.JT_HEADING;
+                headingCount++;
+                token.heading.count = headingCount;
+                token.heading.level = 2;
+                token.heading.text = h2Matcher.group(1);
+            } else if (h3Matcher.find()) {
+                token.type = JemToken.Type.JT_HEADING;
+                headingCount++;
+                token.heading.count = headingCount;
+                token.heading.level = 3;
+                token.heading.text = h3Matcher.group(1);
+            } else if (hrMatcher.find()) {
+                token.type = JemToken.Type.JT_HR;
+            } else if (liMatcher.find()) {
+                token.type = JemToken.Type.JT_LIST_ITEM;
+                token.text = liMatcher.group(1);
+            } else if (bqMatcher.find()) {
+                token.type = JemToken.Type.JT_BLOCKQUOTE;
+                token.text = bqMatcher.group(1);
+            } else {
+                token.type = JemToken.Type.JT_TEXT;
+                token.text = line;
+            }
+            tokenStream.add(token);
+        }
+        return title;
+    }
+}
@@ -0,0 +1,76 @@
+package net.prsv.jemtext.test;
+
+import net.prsv.jemtext.JemDocument;
+import net.prsv.jemtext.JemUtf8Document;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JemUtf8DocumentTest {
+
+    @org.junit.Test
+    public void render_matchesStringPath() throws Exception {
+        Random random = new Random(11);
+        for (int doc = 0; doc < 2000; doc++) {
+            assertSameOutput(JemTokenizerTest.randomDocument(random));
+        }
+    }
+
+    @org.junit.Test
+    public void render_multiByteWhitespaceAndTerminators() throws Exception {
+        // every BMP character as leading/trailing "whitespace", inside a link and as a line terminator
+        for (char c = 0x80; c < 0xD800; c++) {
+            assertSameOutput(c + "# Heading" + c + "\n=> gemini://x" + c + "y alt" + c + "text\n* a" + c + "b" + c);
+        }
+    }
+
+    @org.junit.Test
+    public void parse_malformedInput() throws Exception {
+        byte[] input = {'#', ' ', 'T', (byte) 0xC3, '\n', '*', ' ', (byte) 0xE2, (byte) 0x82, '\n'};
+        try {
+            JemUtf8Document.parse(ByteBuffer.wrap(input), JemUtf8Document.MalformedInput.REPORT);
+            fail("malformed input was not reported");
+        } catch (MalformedInputException expected) {
+            // expected
+        }
+        JemUtf8Document document = JemUtf8Document.parse(ByteBuffer.wrap(input));
+        JemDocument expected = JemDocument.parse(new String(input, StandardCharsets.UTF_8));
+        ByteArrayOutputStream html = new ByteArrayOutputStream();
+        document.html(html, false, true, true);
+        assertEquals(expected.html(), html.toString(StandardCharsets.UTF_8));
+        assertEquals(expected.title(), document.title());
+    }
+
+    private static void assertSameOutput(String input) throws Exception {
+        JemDocument expected = JemDocument.parse(input);
+        JemUtf8Document actual = JemUtf8Document.parse(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(input, expected.size(), actual.size());
+        assertEquals(input, expected.title(), actual.title());
+
+        ByteArrayOutputStream html = new ByteArrayOutputStream();
+        actual.html(html, false, true, true);
+        assertEquals(input, orEmpty(expected.html()), html.toString(StandardCharsets.UTF_8));
+        ByteArrayOutputStream strict = new ByteArrayOutputStream();
+        actual.html(Channels.newChannel(strict), true, false, false);
+        assertEquals(input, orEmpty(expected.html(true, false, false)), strict.toString(StandardCharsets.UTF_8));
+        ByteArrayOutputStream markdown = new ByteArrayOutputStream();
+        actual.markdown(markdown, true);
+        assertEquals(input, orEmpty(expected.markdown()), markdown.toString(StandardCharsets.UTF_8));
+        ByteArrayOutputStream gemini = new ByteArrayOutputStream();
+        actual.gemini(gemini);
+        assertEquals(input, orEmpty(expected.gemini()), gemini.toString(StandardCharsets.UTF_8));
+        ByteArrayOutputStream toc = new ByteArrayOutputStream();
+        actual.toc(toc);
+        assertEquals(input, orEmpty(expected.toc()), toc.toString(StandardCharsets.UTF_8));
+    }
+
+    private static String orEmpty(String output) {
+        return output == null ? "" : output;
+    }
+}